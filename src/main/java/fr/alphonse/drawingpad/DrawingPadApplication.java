@@ -6,6 +6,8 @@ import fr.alphonse.drawingpad.document.utils.DocumentUtils;
 import fr.alphonse.drawingpad.view.internal.linkresize.LinkResizeModification;
 
 import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import java.awt.*;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
@@ -13,7 +15,10 @@ import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
 
 public class DrawingPadApplication {
 
@@ -27,6 +32,12 @@ public class DrawingPadApplication {
 
     private static Drawing clipboard;
 
+    // the files being read, which are not opened a second time
+    private static final Set<Path> openingPaths = new HashSet<>();
+
+    // the files are read in parallel, but not all at once
+    private static final Semaphore openingPermits = new Semaphore(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
     private record DocumentRecord(Document document, Path path) {}
 
     public static void main(String[] args) {
@@ -95,6 +106,25 @@ public class DrawingPadApplication {
         redoMenuItem.addActionListener(event -> document.redo());
         editMenu.add(redoMenuItem);
 
+        var historyMenuItem = new JMenuItem();
+        historyMenuItem.setEnabled(false);
+        editMenu.add(historyMenuItem);
+        editMenu.addMenuListener(new MenuListener() {
+            @Override
+            public void menuSelected(MenuEvent e) {
+                double heapCost = document.findHistoryHeapCost() / (1024.0 * 1024.0);
+                historyMenuItem.setText(String.format("Undo History: %.1f MB", heapCost));
+            }
+
+            @Override
+            public void menuDeselected(MenuEvent e) {
+            }
+
+            @Override
+            public void menuCanceled(MenuEvent e) {
+            }
+        });
+
         editMenu.addSeparator();
 
         var selectAllMenuItem = new JMenuItem("Select All");
@@ -167,23 +197,46 @@ public class DrawingPadApplication {
         }
     }
 
+    // the file is read in the background, and its window appears once it is ready
     private static void openDocumentAtPath(Path path) {
         Document openedDocument = findOpenedDocumentWithPath(path);
         if (openedDocument != null) {
             openedDocument.moveToFront();
             return;
         }
+        if (!openingPaths.add(path)) {
+            return;
+        }
+        Thread openingThread = new Thread(() -> readDocument(path), "drawing-open-" + path.getFileName());
+        openingThread.setDaemon(true);
+        openingThread.start();
+    }
+
+    private static void readDocument(Path path) {
+        openingPermits.acquireUninterruptibly();
         try {
             Document document = new Document(path);
-            displayDocument(document, path);
-            DocumentUtils.addToRecentFiles(path);
-            refreshRecentFiles();
-            disposeGhostFrameIfNecessary();
-        } catch (IOException e) {
-            e.printStackTrace();
+            SwingUtilities.invokeLater(() -> displayOpenedDocument(document, path));
+        } catch (IOException | RuntimeException e) {
+            SwingUtilities.invokeLater(() -> reportOpeningFailure(path, e));
+        } finally {
+            openingPermits.release();
         }
     }
 
+    private static void displayOpenedDocument(Document document, Path path) {
+        openingPaths.remove(path);
+        displayDocument(document, path);
+        DocumentUtils.addToRecentFiles(path);
+        refreshRecentFiles();
+        disposeGhostFrameIfNecessary();
+    }
+
+    private static void reportOpeningFailure(Path path, Exception exception) {
+        openingPaths.remove(path);
+        JOptionPane.showMessageDialog(null, "The drawing " + path + " could not be opened:\n" + exception.getMessage(), "Open Failed", JOptionPane.ERROR_MESSAGE);
+    }
+
     private static Document findOpenedDocumentWithPath(Path path) {
         return documents.stream()
                 .filter(record -> path.equals(record.path))
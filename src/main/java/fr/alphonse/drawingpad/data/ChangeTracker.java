@@ -0,0 +1,81 @@
+package fr.alphonse.drawingpad.data;
+
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Getter
+public class ChangeTracker {
+
+    // incremented on every modification of the drawing
+    private long version;
+
+    // the elements modified since the changes were last collected
+    @Getter(AccessLevel.NONE)
+    private Set<GraphElement> changedElements = new HashSet<>();
+
+    @Getter(AccessLevel.NONE)
+    private boolean hasPendingChanges = false;
+
+    // the structures kept up to date incrementally, such as the indexes of the view, each reading the changes at its own pace
+    @Getter(AccessLevel.NONE)
+    private final List<ChangeLog> changeLogs = new ArrayList<>();
+
+    public void markChanged() {
+        version += 1;
+        hasPendingChanges = true;
+    }
+
+    public void markChanged(GraphElement element) {
+        markChanged();
+        changedElements.add(element);
+        for (ChangeLog changeLog: changeLogs) {
+            changeLog.changedElements.add(element);
+        }
+    }
+
+    // returns null if nothing was modified since the last call
+    public Set<GraphElement> collectChanges() {
+        if (!hasPendingChanges) {
+            return null;
+        }
+        Set<GraphElement> collectedElements = changedElements;
+        changedElements = new HashSet<>();
+        hasPendingChanges = false;
+        return collectedElements;
+    }
+
+    // the log receives the elements changed from now on
+    public ChangeLog openChangeLog() {
+        ChangeLog changeLog = new ChangeLog();
+        changeLogs.add(changeLog);
+        return changeLog;
+    }
+
+    public static class ChangeLog {
+
+        private Set<GraphElement> changedElements = new HashSet<>();
+
+        private ChangeLog() {
+        }
+
+        public boolean isEmpty() {
+            return changedElements.isEmpty();
+        }
+
+        // returns the elements changed since the last call, the removed ones included
+        public Set<GraphElement> collectChanges() {
+            if (changedElements.isEmpty()) {
+                return Set.of();
+            }
+            Set<GraphElement> collectedElements = changedElements;
+            changedElements = new HashSet<>();
+            return collectedElements;
+        }
+    }
+}
@@ -17,11 +17,23 @@ import java.util.Map;
 @AllArgsConstructor
 public class Drawing {
 
+    // the ids index the position tables, a larger id in a file is taken as corrupt
+    public static final int MAX_ID = (1 << 24) - 1;
+
     private List<GraphElement> elements;
 
-    private Map<GraphElement, Position> positions;
+    private PositionTable<Position> positions;
+
+    private PositionTable<Vector> namePositions;
+
+    private Map<Integer, GraphElement> elementsById;
 
-    private Map<GraphElement, Vector> namePositions;
+    private int nextId;
+
+    // for each element, the completions and links attached to it
+    private Map<GraphElement, List<GraphElement>> dependentElements;
 
     private String note;
+
+    private ChangeTracker changeTracker;
 }
@@ -0,0 +1,292 @@
+package fr.alphonse.drawingpad.data;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+// the positions of the elements, stored in dense columns of coordinates rather than in map entries
+public class PositionTable<V> extends AbstractMap<GraphElement, V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ChangeTracker changeTracker;
+
+    private final ToIntFunction<V> xFunction;
+
+    private final ToIntFunction<V> yFunction;
+
+    private final CoordinateFactory<V> coordinateFactory;
+
+    // the slot of each id plus one, zero when the id has no position, as the link centers and name positions are optional
+    private int[] slotsById = new int[INITIAL_CAPACITY];
+
+    // the columns are filled up to size, the element of each slot, to tell it from another element that would have had the same id
+    private GraphElement[] elements = new GraphElement[INITIAL_CAPACITY];
+
+    private int[] xs = new int[INITIAL_CAPACITY];
+
+    private int[] ys = new int[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    private Set<Entry<GraphElement, V>> entrySet;
+
+    @FunctionalInterface
+    public interface CoordinateFactory<V> {
+        V make(int x, int y);
+    }
+
+    public PositionTable(ChangeTracker changeTracker, ToIntFunction<V> xFunction, ToIntFunction<V> yFunction, CoordinateFactory<V> coordinateFactory) {
+        this.changeTracker = changeTracker;
+        this.xFunction = xFunction;
+        this.yFunction = yFunction;
+        this.coordinateFactory = coordinateFactory;
+    }
+
+    public static PositionTable<Position> ofPositions(ChangeTracker changeTracker) {
+        return new PositionTable<>(changeTracker, Position::x, Position::y, Position::new);
+    }
+
+    public static PositionTable<Vector> ofVectors(ChangeTracker changeTracker) {
+        return new PositionTable<>(changeTracker, Vector::x, Vector::y, Vector::new);
+    }
+
+    private int findIndex(Object key) {
+        if (!(key instanceof GraphElement element)) {
+            return -1;
+        }
+        int slot = findSlotOfId(element.getId());
+        if (slot == -1 || elements[slot] != element) {
+            return -1;
+        }
+        return slot;
+    }
+
+    private int findSlotOfId(int id) {
+        if (id < 0 || id >= slotsById.length) {
+            return -1;
+        }
+        return slotsById[id] - 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findIndex(key) != -1;
+    }
+
+    @Override
+    public V get(Object key) {
+        int index = findIndex(key);
+        if (index == -1) {
+            return null;
+        }
+        return coordinateFactory.make(xs[index], ys[index]);
+    }
+
+    public int getX(GraphElement element) {
+        return xs[findExistingIndex(element)];
+    }
+
+    public int getY(GraphElement element) {
+        return ys[findExistingIndex(element)];
+    }
+
+    private int findExistingIndex(GraphElement element) {
+        int index = findIndex(element);
+        if (index == -1) {
+            throw new NoSuchElementException("No position for element " + element.getId());
+        }
+        return index;
+    }
+
+    @Override
+    public V put(GraphElement key, V value) {
+        Objects.requireNonNull(value);
+        V previousValue = get(key);
+        put(key, xFunction.applyAsInt(value), yFunction.applyAsInt(value));
+        return previousValue;
+    }
+
+    public void put(GraphElement element, int x, int y) {
+        int id = element.getId();
+        if (id < 0 || id > Drawing.MAX_ID) {
+            throw new IllegalArgumentException("Invalid element id " + id);
+        }
+        changeTracker.markChanged(element);
+        int slot = findSlotOfId(id);
+        if (slot == -1) {
+            ensureCapacity(id + 1, size + 1);
+            slot = size;
+            slotsById[id] = slot + 1;
+            size += 1;
+        }
+        elements[slot] = element;
+        xs[slot] = x;
+        ys[slot] = y;
+    }
+
+    // moves the element without creating a position, returns false if it has none
+    public boolean translate(GraphElement element, int dx, int dy) {
+        int index = findIndex(element);
+        if (index == -1) {
+            return false;
+        }
+        changeTracker.markChanged(element);
+        xs[index] += dx;
+        ys[index] += dy;
+        return true;
+    }
+
+    private void ensureCapacity(int idCapacity, int slotCapacity) {
+        if (idCapacity > slotsById.length) {
+            slotsById = Arrays.copyOf(slotsById, Math.max(idCapacity, 2 * slotsById.length));
+        }
+        if (slotCapacity > elements.length) {
+            int newCapacity = Math.max(slotCapacity, 2 * elements.length);
+            elements = Arrays.copyOf(elements, newCapacity);
+            xs = Arrays.copyOf(xs, newCapacity);
+            ys = Arrays.copyOf(ys, newCapacity);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        int index = findIndex(key);
+        if (index == -1) {
+            return null;
+        }
+        V previousValue = coordinateFactory.make(xs[index], ys[index]);
+        removeIndex(index);
+        return previousValue;
+    }
+
+    // the last slot moves into the hole, so that the columns stay dense
+    private void removeIndex(int index) {
+        GraphElement element = elements[index];
+        changeTracker.markChanged(element);
+        slotsById[element.getId()] = 0;
+        int lastIndex = size - 1;
+        if (index != lastIndex) {
+            GraphElement lastElement = elements[lastIndex];
+            elements[index] = lastElement;
+            xs[index] = xs[lastIndex];
+            ys[index] = ys[lastIndex];
+            slotsById[lastElement.getId()] = index + 1;
+        }
+        elements[lastIndex] = null;
+        size -= 1;
+    }
+
+    @Override
+    public void clear() {
+        for (int index = 0 ; index < size ; index++) {
+            changeTracker.markChanged(elements[index]);
+            slotsById[elements[index].getId()] = 0;
+            elements[index] = null;
+        }
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<GraphElement, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private class EntrySet extends AbstractSet<Entry<GraphElement, V>> {
+
+        @Override
+        public Iterator<Entry<GraphElement, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            PositionTable.this.clear();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Entry<GraphElement, V>> {
+
+        private int nextIndex = 0;
+
+        private int lastIndex = -1;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public Entry<GraphElement, V> next() {
+            if (nextIndex >= size) {
+                throw new NoSuchElementException();
+            }
+            lastIndex = nextIndex;
+            nextIndex += 1;
+            return new TableEntry(elements[lastIndex]);
+        }
+
+        @Override
+        public void remove() {
+            if (lastIndex < 0) {
+                throw new IllegalStateException();
+            }
+            // the last element moves into the removed slot, it is visited next
+            removeIndex(lastIndex);
+            nextIndex = lastIndex;
+            lastIndex = -1;
+        }
+    }
+
+    // reads and writes through the table, the slot of the element changing with the removals
+    private class TableEntry implements Entry<GraphElement, V> {
+
+        private final GraphElement element;
+
+        private TableEntry(GraphElement element) {
+            this.element = element;
+        }
+
+        @Override
+        public GraphElement getKey() {
+            return element;
+        }
+
+        @Override
+        public V getValue() {
+            int index = findExistingIndex(element);
+            return coordinateFactory.make(xs[index], ys[index]);
+        }
+
+        @Override
+        public V setValue(V value) {
+            return put(element, value);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Entry<?,?> entry && element == entry.getKey() && getValue().equals(entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return element.hashCode() ^ getValue().hashCode();
+        }
+    }
+}
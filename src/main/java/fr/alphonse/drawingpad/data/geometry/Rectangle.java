@@ -17,4 +17,16 @@ public record Rectangle(int x, int y, int width, int height) {
     public Rectangle increaseByMargin(int margin) {
         return new Rectangle(x - margin, y - margin, width + 2 * margin, height + 2 * margin);
     }
+
+    public Rectangle union(Rectangle rectangle) {
+        int minX = Math.min(x, rectangle.x);
+        int minY = Math.min(y, rectangle.y);
+        int maxX = Math.max(x + width, rectangle.x + rectangle.width);
+        int maxY = Math.max(y + height, rectangle.y + rectangle.height);
+        return new Rectangle(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    public boolean intersects(Rectangle rectangle) {
+        return x <= rectangle.x + rectangle.width && rectangle.x <= x + width && y <= rectangle.y + rectangle.height && rectangle.y <= y + height;
+    }
 }
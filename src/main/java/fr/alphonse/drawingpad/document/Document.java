@@ -1,11 +1,15 @@
 package fr.alphonse.drawingpad.document;
 
-import com.fasterxml.jackson.databind.json.JsonMapper;
 import fr.alphonse.drawingpad.data.Drawing;
 import fr.alphonse.drawingpad.data.DrawingJson;
 import fr.alphonse.drawingpad.data.model.GraphElement;
 import fr.alphonse.drawingpad.document.utils.ChangeDetector;
+import fr.alphonse.drawingpad.document.utils.DocumentSaver;
 import fr.alphonse.drawingpad.document.utils.DocumentUtils;
+import fr.alphonse.drawingpad.document.utils.DrawingBinaryFormat;
+import fr.alphonse.drawingpad.document.utils.DrawingHistory;
+import fr.alphonse.drawingpad.document.utils.DrawingJournal;
+import fr.alphonse.drawingpad.document.utils.DrawingReader;
 import fr.alphonse.drawingpad.document.utils.GraphHandler;
 import fr.alphonse.drawingpad.view.DrawingComponent;
 import fr.alphonse.drawingpad.view.InfoComponent;
@@ -17,20 +21,19 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 
 public class Document {
 
     private final Drawing model;
 
-    private final ChangeDetector<Drawing, DrawingJson> changeDetector;
+    private final ChangeDetector<Drawing, Set<GraphElement>> changeDetector;
 
-    private final List<DrawingJson> previousModels = new ArrayList<>();
-
-    private Integer previousModelIndex;
+    private DrawingHistory history;
 
     private String windowName;
 
@@ -44,9 +47,21 @@ public class Document {
 
     private boolean wasModifiedSinceLastSave = false;
 
+    // whether the file holds the state of the first step of the history, which is reset at each save
+    private boolean isFileAtInitialStep = true;
+
+    private final DocumentSaver saver = new DocumentSaver(this::reactToSaveEnd);
+
+    // the changes since the last save, kept on disk in case the application stops before the next one
+    private final DrawingJournal journal;
+
+    // for each save in progress, the position of the journal when its snapshot was taken
+    private final TreeMap<Long, Long> journalPositionsBySave = new TreeMap<>();
+
     public Document(String windowName) {
         this.model = GraphHandler.makeEmptyModel();
-        this.changeDetector = new ChangeDetector<>(model, GraphHandler::mapModelToJson);
+        this.journal = new DrawingJournal(model, this::reactToJournalFailure);
+        this.changeDetector = new ChangeDetector<>(model, GraphHandler::collectChangedElements);
         this.windowName = windowName;
         listenToChanges();
     }
@@ -54,33 +69,44 @@ public class Document {
     public Document(Path path) throws IOException {
         this.path = path;
         this.model = importFile(path);
-        this.changeDetector = new ChangeDetector<>(model, GraphHandler::mapModelToJson);
+        this.journal = new DrawingJournal(model, this::reactToJournalFailure);
+        // the changes recovered from the journal are not saved yet
+        this.wasModifiedSinceLastSave = journal.recover(path);
+        this.isFileAtInitialStep = !wasModifiedSinceLastSave;
+        this.changeDetector = new ChangeDetector<>(model, GraphHandler::collectChangedElements);
         listenToChanges();
     }
 
     private static Drawing importFile(Path path) throws IOException {
-        JsonMapper jsonMapper = new JsonMapper();
-        DrawingJson json = jsonMapper.readValue(path.toFile(), DrawingJson.class);
-        return GraphHandler.mapJsonToModel(json);
+        if (DrawingBinaryFormat.isBinaryPath(path)) {
+            return DrawingBinaryFormat.readDrawing(path);
+        }
+        return DrawingReader.readDrawing(path);
     }
 
     private void listenToChanges() {
-        registerCurrentStateForUndo();
+        this.history = new DrawingHistory(model, DocumentUtils.findUndoMemoryLimit());
         changeDetector.addListener(this, Document::reactToChange);
+        // a listener of its own, so that the changes caused by the document are journaled too
+        changeDetector.addListener(journal, DrawingJournal::appendChanges);
     }
 
-    private void registerCurrentStateForUndo() {
-        DrawingJson currentState = changeDetector.getCurrentState();
-        previousModels.add(currentState);
+    private void reactToChange(Set<GraphElement> changedElements) {
+        // the later notifications only come from the nudges of the selection
+        history.registerChanges(changedElements, changeDetector.isNotifyingLaterChanges());
+        changeModifiedFlag(true);
     }
 
-    private void reactToChange() {
-        if (previousModelIndex != null) {
-            previousModels.subList(previousModelIndex+1, previousModels.size()).clear();
-            previousModelIndex = null;
-        }
-        registerCurrentStateForUndo();
-        changeModifiedFlag(true);
+    // undoing back to the saved step makes the drawing unmodified again
+    private boolean isDifferentFromSavedFile() {
+        return !isFileAtInitialStep || !history.isAtInitialStep();
+    }
+
+    // the elements are sorted, since an undo can put them back in another order
+    private DrawingJson makeFileState() {
+        DrawingJson state = GraphHandler.mapModelToJson(model);
+        state.getElements().sort(Comparator.comparing(GraphElement::getId));
+        return state;
     }
 
     private void changeModifiedFlag(boolean newValue) {
@@ -88,8 +114,15 @@ public class Document {
             return;
         }
         wasModifiedSinceLastSave = newValue;
+        refreshTitle();
+    }
+
+    private void refreshTitle() {
         var name = findWindowName();
         String newName = (wasModifiedSinceLastSave ? name + "*" : name);
+        if (saver.isSaving()) {
+            newName += " (saving…)";
+        }
         frame.setTitle(newName);
     }
 
@@ -102,7 +135,7 @@ public class Document {
         frame.setJMenuBar(menuBar);
 
         windowName = findWindowName();
-        frame.setTitle(windowName);
+        refreshTitle();
 
         frame.setLayout(new BorderLayout());
 
@@ -123,17 +156,27 @@ public class Document {
 
             @Override
             public void windowClosing(WindowEvent e) {
-                if (previousModels.size() > 1 && !Objects.equals(previousModelIndex, 0)) {
-                    int response = JOptionPane.showConfirmDialog(frame, "Do you want to save changes before closing?");
-                    switch (response) {
-                        case JOptionPane.CANCEL_OPTION, JOptionPane.CLOSED_OPTION:
-                            return;
-                        case JOptionPane.OK_OPTION:
-                            Document.this.save();
-                        default:
-                            break;
+                // asked again while the drawing is not saved, which a failed save makes it, unless the user discards the changes
+                boolean isDiscardingChanges = false;
+                do {
+                    if (isDifferentFromSavedFile()) {
+                        int response = JOptionPane.showConfirmDialog(frame, "Do you want to save changes before closing?");
+                        switch (response) {
+                            case JOptionPane.CANCEL_OPTION, JOptionPane.CLOSED_OPTION:
+                                return;
+                            case JOptionPane.OK_OPTION:
+                                Document.this.save();
+                                break;
+                            default:
+                                isDiscardingChanges = true;
+                                break;
+                        }
                     }
-                }
+                    if (!waitForSaves(isDiscardingChanges)) {
+                        return;
+                    }
+                } while (!isDiscardingChanges && isDifferentFromSavedFile());
+                journal.delete();
                 if (Document.this.closeListener != null) {
                     Document.this.closeListener.accept(frame);
                 }
@@ -212,45 +255,32 @@ public class Document {
     }
 
     public void undo() {
-        if (previousModelIndex == null && previousModels.size() == 1) {
-            return;
-        }
-        if (previousModelIndex == null) {
-            previousModelIndex = previousModels.size() - 1;
-        }
-        if (previousModelIndex == 0) {
+        // the last changes must be in the history before going back
+        changeDetector.flushPendingNotification();
+        if (!history.canUndo()) {
             return;
         }
-        previousModelIndex -= 1;
-        changeModel(previousModels.get(previousModelIndex));
-        if (previousModelIndex == 0) {
-            changeModifiedFlag(false);
-        }
-    }
-
-    private void changeModel(DrawingJson json) {
-        GraphHandler.clearModel(this.model);
-        GraphHandler.fillModelWithJson(this.model, json);
+        history.undo();
         this.changeDetector.notifyChangeCausedBy(this);
+        changeModifiedFlag(isDifferentFromSavedFile());
     }
 
     public void redo() {
-        if (previousModelIndex == null) {
+        changeDetector.flushPendingNotification();
+        if (!history.canRedo()) {
             return;
         }
-        previousModelIndex += 1;
-        changeModel(previousModels.get(previousModelIndex));
-        if (previousModelIndex == previousModels.size()-1) {
-            previousModelIndex = null;
-        }
-        changeModifiedFlag(true);
+        history.redo();
+        this.changeDetector.notifyChangeCausedBy(this);
+        changeModifiedFlag(isDifferentFromSavedFile());
+    }
+
+    public long findHistoryHeapCost() {
+        return history.getHeapCost();
     }
 
     public void save() {
-        changeModifiedFlag(false);
-        previousModelIndex = null;
-        previousModels.clear();
-        registerCurrentStateForUndo();
+        changeDetector.flushPendingNotification();
 
         if (this.path != null) {
             writeFile();
@@ -263,18 +293,55 @@ public class Document {
         }
 
         this.path = savePath;
-        this.frame.setTitle(findWindowName());
 
         writeFile();
     }
 
-    public void writeFile() {
-        DrawingJson json = GraphHandler.mapModelToJson(model);
+    // the file is written in the background from a snapshot, so that the drawing can still be edited
+    private void writeFile() {
+        changeModifiedFlag(false);
+        history.reset();
+        DrawingJson snapshot = makeFileState();
+        long saveNumber = saver.save(snapshot, path, DocumentUtils.isBinaryCompressionEnabled());
+        journalPositionsBySave.put(saveNumber, journal.findPosition());
+        isFileAtInitialStep = true;
+        refreshTitle();
+    }
+
+    // a failed save marks the drawing modified again, unless its changes are discarded
+    private boolean waitForSaves(boolean isDiscardingChanges) {
+        DocumentSaver.SaveResult result;
         try {
-            new JsonMapper().writeValue(path.toFile(), json);
-        } catch (IOException e) {
-            e.printStackTrace();
+            result = saver.waitForSaves();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (result != null && !isDiscardingChanges) {
+            reactToSaveEnd(result);
+        }
+        return true;
+    }
+
+    private void reactToJournalFailure(Exception exception) {
+        // the journal can fail while the document is opened, before its window exists
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "The unsaved changes of the drawing can no longer be kept for recovery:\n" + exception.getMessage(), "Journal Failed", JOptionPane.ERROR_MESSAGE));
+    }
+
+    private void reactToSaveEnd(DocumentSaver.SaveResult result) {
+        // the saves replaced by this one were never written
+        Long journalPosition = journalPositionsBySave.remove(result.saveNumber());
+        journalPositionsBySave.headMap(result.saveNumber()).clear();
+        if (result.isSuccessful() && journalPosition != null) {
+            journal.compact(result.path(), journalPosition);
+        }
+        if (!result.isSuccessful()) {
+            // the file no longer matches any step
+            isFileAtInitialStep = false;
+            changeModifiedFlag(true);
+            JOptionPane.showMessageDialog(frame, "The drawing could not be saved to " + result.path() + ":\n" + result.exception().getMessage(), "Save Failed", JOptionPane.ERROR_MESSAGE);
         }
+        refreshTitle();
     }
 
     public void close() {
@@ -1,30 +1,74 @@
 package fr.alphonse.drawingpad.document.utils;
 
+import javax.swing.*;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
-public class ChangeDetector<T,S> {
+public class ChangeDetector<T,C> {
 
     private final T model;
 
-    private S currentState;
+    // returns the changes made since its last call, or null if there are none
+    private final Function<T, C> changeFunction;
 
-    private final Function<T, S> stateFunction;
+    private final List<ListenerReference<?,C>> listenerReferences = new ArrayList<>();
 
-    private final List<ListenerReference<?>> listenerReferences = new ArrayList<>();
+    private record ListenerReference<U,C>(SoftReference<U> reference, BiConsumer<U,C> action) {}
 
-    private record ListenerReference<U>(SoftReference<U> reference, Consumer<U> action) {}
+    // the number of transactions begun and not committed yet, the transactions being nestable
+    private int transactionDepth = 0;
 
-    public ChangeDetector(T model, Function<T, S> stateFunction) {
+    // a notification is pending until the event dispatch thread gets to it, the following requests joining it
+    private boolean isNotificationPending = false;
+
+    // the listener that caused all the pending changes, or null
+    private Object pendingCallingListener;
+
+    // whether the listeners are being notified of the changes requested with notifyChangeLaterCausedBy
+    private boolean isNotifyingLaterChanges = false;
+
+    public ChangeDetector(T model, Function<T, C> changeFunction) {
         this.model = model;
-        this.stateFunction = stateFunction;
-        this.currentState = stateFunction.apply(model);
+        this.changeFunction = changeFunction;
+        // the initial state is not a change
+        changeFunction.apply(model);
+    }
+
+    // for models that can only be compared, the changes are the new states
+    public static <T,S> ChangeDetector<T,S> comparingStates(T model, Function<T, S> stateFunction) {
+        return new ChangeDetector<>(model, new StateComparison<>(stateFunction));
+    }
+
+    private static class StateComparison<T,S> implements Function<T,S> {
+
+        private final Function<T, S> stateFunction;
+
+        private S currentState;
+
+        private StateComparison(Function<T, S> stateFunction) {
+            this.stateFunction = stateFunction;
+        }
+
+        @Override
+        public S apply(T model) {
+            S newState = stateFunction.apply(model);
+            if (ModelStateManager.areDeepEqual(newState, currentState)) {
+                return null;
+            }
+            currentState = newState;
+            return newState;
+        }
     }
 
     public <U> void addListener(U listener, Consumer<U> action) {
+        addListener(listener, (U target, C change) -> action.accept(target));
+    }
+
+    public <U> void addListener(U listener, BiConsumer<U, C> action) {
         var listenerReference = new ListenerReference<>(new SoftReference<>(listener), action);
         listenerReferences.add(listenerReference);
     }
@@ -34,30 +78,97 @@ public class ChangeDetector<T,S> {
     }
 
     public void notifyChangeCausedBy(Object callingListener) {
-        S newState = stateFunction.apply(model);
-        if (ModelStateManager.areDeepEqual(newState, currentState)) {
+        // during a transaction, the changes accumulate in the model until the commit
+        if (transactionDepth > 0) {
             return;
         }
-        currentState = newState;
-        for (ListenerReference<?> listenerReference: listenerReferences) {
+        C change = changeFunction.apply(model);
+        if (change == null) {
+            return;
+        }
+        for (ListenerReference<?,C> listenerReference: listenerReferences) {
             if (callingListener != null && listenerReference.reference().get() == callingListener) {
                 continue;
             }
-            callListener(listenerReference);
+            callListener(listenerReference, change);
         }
         listenerReferences.removeIf(listenerReference -> listenerReference.reference.get() == null);
 
     }
 
-    private static <U> void callListener(ListenerReference<U> listenerReference) {
-        var target = listenerReference.reference.get();
-        if (target == null) {
+    // for the frequent changes, like the ones caused by key repeat: the listeners are notified once per batch of events
+    // and can tell these notifications apart with isNotifyingLaterChanges, so that the history merges them
+    public void notifyChangeLaterCausedBy(Object callingListener) {
+        if (isNotificationPending) {
+            if (pendingCallingListener != callingListener) {
+                pendingCallingListener = null;
+            }
+            return;
+        }
+        isNotificationPending = true;
+        pendingCallingListener = callingListener;
+        SwingUtilities.invokeLater(this::flushPendingNotification);
+    }
+
+    // to call before using the result of the listeners, such as before undoing
+    public void flushPendingNotification() {
+        if (!isNotificationPending) {
             return;
         }
-        listenerReference.action.accept(target);
+        Object callingListener = pendingCallingListener;
+        isNotificationPending = false;
+        pendingCallingListener = null;
+        isNotifyingLaterChanges = true;
+        try {
+            notifyChangeCausedBy(callingListener);
+        } finally {
+            isNotifyingLaterChanges = false;
+        }
+    }
+
+    // a change notified in the meantime takes the pending changes along, and is not a later notification
+    public boolean isNotifyingLaterChanges() {
+        return isNotifyingLaterChanges;
+    }
+
+    // the notifications made until the matching commit are replaced by a single one at the commit
+    public void beginTransaction() {
+        // the changes made before the transaction are not part of it
+        if (transactionDepth == 0) {
+            flushPendingNotification();
+        }
+        transactionDepth += 1;
+    }
+
+    public void commitTransaction() {
+        commitTransactionCausedBy(null);
+    }
+
+    // the listeners receive all the changes of the transaction at once, only the outermost commit notifies
+    public void commitTransactionCausedBy(Object callingListener) {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("No transaction to commit");
+        }
+        transactionDepth -= 1;
+        if (transactionDepth == 0) {
+            notifyChangeCausedBy(callingListener);
+        }
     }
 
-    public S getCurrentState() {
-        return currentState;
+    public void runTransactionCausedBy(Object callingListener, Runnable modification) {
+        beginTransaction();
+        try {
+            modification.run();
+        } finally {
+            commitTransactionCausedBy(callingListener);
+        }
+    }
+
+    private static <U,C> void callListener(ListenerReference<U,C> listenerReference, C change) {
+        var target = listenerReference.reference.get();
+        if (target == null) {
+            return;
+        }
+        listenerReference.action.accept(target, change);
     }
 }
@@ -0,0 +1,127 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.DrawingJson;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+// writes the snapshots of a document in the background, only the latest one when several are waiting
+public class DocumentSaver {
+
+    private final Consumer<SaveResult> resultListener;
+
+    private final Object lock = new Object();
+
+    private PendingSave pendingSave;
+
+    private long saveCount = 0;
+
+    private Thread savingThread;
+
+    private volatile SaveResult lastResult;
+
+    // the number of the last save whose result was given to the listener or to a waiter, only used on the event dispatch thread
+    private long lastReportedSaveNumber = 0;
+
+    private record PendingSave(long saveNumber, DrawingJson snapshot, Path path, boolean isCompressed) {}
+
+    // the exception is null when the save succeeded
+    public record SaveResult(long saveNumber, Path path, IOException exception) {
+
+        public boolean isSuccessful() {
+            return exception == null;
+        }
+    }
+
+    // the listener is called on the event dispatch thread
+    public DocumentSaver(Consumer<SaveResult> resultListener) {
+        this.resultListener = resultListener;
+    }
+
+    // the snapshot must not be modified afterwards, returns the number given to the save in its result
+    public long save(DrawingJson snapshot, Path path, boolean isCompressed) {
+        synchronized (lock) {
+            saveCount += 1;
+            pendingSave = new PendingSave(saveCount, snapshot, path, isCompressed);
+            if (savingThread == null) {
+                savingThread = new Thread(this::writePendingSaves, "drawing-save-" + path.getFileName());
+                savingThread.setDaemon(true);
+                savingThread.start();
+            }
+            return saveCount;
+        }
+    }
+
+    // the thread is started with a pending save, and stops when no other one is waiting
+    private void writePendingSaves() {
+        while (true) {
+            PendingSave save;
+            synchronized (lock) {
+                save = pendingSave;
+                pendingSave = null;
+            }
+            SaveResult result = writeSave(save);
+            lastResult = result;
+            boolean isLastSave;
+            synchronized (lock) {
+                isLastSave = (pendingSave == null);
+                if (isLastSave) {
+                    savingThread = null;
+                }
+            }
+            // the results of the replaced saves are only reported if they failed
+            if (isLastSave || !result.isSuccessful()) {
+                SwingUtilities.invokeLater(() -> reportResult(result));
+            }
+            if (isLastSave) {
+                return;
+            }
+        }
+    }
+
+    // a result already given to a waiter is not reported again
+    private void reportResult(SaveResult result) {
+        if (result.saveNumber() <= lastReportedSaveNumber) {
+            return;
+        }
+        lastReportedSaveNumber = result.saveNumber();
+        resultListener.accept(result);
+    }
+
+    private static SaveResult writeSave(PendingSave save) {
+        try {
+            DrawingWriter.writeDrawing(save.snapshot(), save.path(), save.isCompressed());
+            return new SaveResult(save.saveNumber(), save.path(), null);
+        } catch (IOException e) {
+            return new SaveResult(save.saveNumber(), save.path(), e);
+        } catch (RuntimeException e) {
+            return new SaveResult(save.saveNumber(), save.path(), new IOException(e));
+        }
+    }
+
+    public boolean isSaving() {
+        synchronized (lock) {
+            return savingThread != null;
+        }
+    }
+
+    // the saving thread does not keep the application alive, so it must be awaited before closing
+    // returns the result of the last save when it was not reported yet, which the listener then never receives, or null
+    public SaveResult waitForSaves() throws InterruptedException {
+        Thread thread;
+        synchronized (lock) {
+            thread = savingThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+        SaveResult result = lastResult;
+        if (result == null || result.saveNumber() <= lastReportedSaveNumber) {
+            return null;
+        }
+        lastReportedSaveNumber = result.saveNumber();
+        return result;
+    }
+}
@@ -26,17 +26,28 @@ public class DocumentUtils {
 
     private static final String FILE_ICON = "\uD83D\uDCC4";
 
+    private static final String UNDO_MEMORY_LIMIT_KEY = "undo-memory-limit";
+
+    private static final long DEFAULT_UNDO_MEMORY_LIMIT = 64 * 1024 * 1024;
+
+    private static final String BINARY_COMPRESSION_KEY = "binary-compression";
+
+    private static final FileNameExtensionFilter JSON_FILTER = new FileNameExtensionFilter("JSON", "json");
+
+    private static final FileNameExtensionFilter BINARY_FILTER = new FileNameExtensionFilter("Binary drawing", DrawingBinaryFormat.EXTENSION);
+
     public static Path chooseFile(JFrame frame, int mode) {
         var chooser = new JFileChooser();
         chooser.setFileSelectionMode(mode);
-        FileNameExtensionFilter filter = new FileNameExtensionFilter(
-                "JSON", "json");
-        chooser.setFileFilter(filter);
+        addFileFilters(chooser);
         chooser.setCurrentDirectory(findFileDialogPath().toFile());
         int returnVal = ((mode & JFileChooser.SAVE_DIALOG) != 0) ? chooser.showSaveDialog(frame) : chooser.showOpenDialog(frame);
         if(returnVal == JFileChooser.APPROVE_OPTION) {
             var file = chooser.getSelectedFile();
             Path path = file.toPath();
+            if (chooser.getFileFilter() == BINARY_FILTER && !DrawingBinaryFormat.isBinaryPath(path)) {
+                path = path.resolveSibling(path.getFileName() + "." + DrawingBinaryFormat.EXTENSION);
+            }
             saveDialogPath(path);
             return path;
         }
@@ -48,9 +59,7 @@ public class DocumentUtils {
     public static List<Path> chooseFiles(JFrame frame, int mode) {
         var chooser = new JFileChooser();
         chooser.setFileSelectionMode(mode);
-        FileNameExtensionFilter filter = new FileNameExtensionFilter(
-                "JSON", "json");
-        chooser.setFileFilter(filter);
+        addFileFilters(chooser);
         chooser.setCurrentDirectory(findFileDialogPath().toFile());
         chooser.setMultiSelectionEnabled(true);
         int returnVal = ((mode & JFileChooser.SAVE_DIALOG) != 0) ? chooser.showSaveDialog(frame) : chooser.showOpenDialog(frame);
@@ -66,6 +75,12 @@ public class DocumentUtils {
         }
     }
 
+    // the JSON filter is selected by default
+    private static void addFileFilters(JFileChooser chooser) {
+        chooser.addChoosableFileFilter(BINARY_FILTER);
+        chooser.setFileFilter(JSON_FILTER);
+    }
+
     private static Path findFileDialogPath() {
         Preferences preferences = findOpenCloseDialogPreferences();
         String userHome = System.getProperty("user.home");
@@ -83,6 +98,17 @@ public class DocumentUtils {
         return preferences.node(APPLICATION_PREFERENCE_KEY);
     }
 
+    // in bytes
+    public static long findUndoMemoryLimit() {
+        Preferences preferences = findApplicationPreferences();
+        return preferences.getLong(UNDO_MEMORY_LIMIT_KEY, DEFAULT_UNDO_MEMORY_LIMIT);
+    }
+
+    public static boolean isBinaryCompressionEnabled() {
+        Preferences preferences = findApplicationPreferences();
+        return preferences.getBoolean(BINARY_COMPRESSION_KEY, false);
+    }
+
     private static void saveDialogPath(Path path) {
         Preferences preferences = findOpenCloseDialogPreferences();
         preferences.put(DIALOG_PATH_KEY, path.getParent().toString());
@@ -0,0 +1,464 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.reference.LinkDirection;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.data.model.value.Value;
+import lombok.experimental.UtilityClass;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.ToIntFunction;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * the binary drawing file, big-endian:
+ * header: magic, version, flags, size of the payload before compression
+ * payload, deflated when the flag is set:
+ *   string table: count, then length and UTF-8 bytes of each string, the other sections referring to strings by index
+ *   note: string index
+ *   elements: count, then a record per element, made of its type, id, name index and type attributes
+ *   positions and name positions: count, then the columns of ids, x and y
+ */
+@UtilityClass
+public class DrawingBinaryFormat {
+
+    public static final String EXTENSION = "dpb";
+
+    private static final int MAGIC = 0x44504144; // "DPAD"
+
+    private static final short VERSION = 1;
+
+    private static final byte DEFLATED_FLAG = 1;
+
+    private static final int NULL_INDEX = -1;
+
+    private static final byte OBJECT_TYPE = 0;
+
+    private static final byte COMPLETION_TYPE = 1;
+
+    private static final byte LINK_TYPE = 2;
+
+    private static final byte VALUE_PRESENT = 1;
+
+    private static final byte GRADUATION_PRESENT = 2;
+
+    private static final byte NUMBER_PRESENT = 4;
+
+    private static final int ELEMENT_START_SIZE = Byte.BYTES + 2 * Integer.BYTES;
+
+    private static final int VALUE_SIZE = 2 * Byte.BYTES + Double.BYTES;
+
+    private static final int COMPLETION_SIZE = ELEMENT_START_SIZE + Integer.BYTES + VALUE_SIZE;
+
+    private static final int LINK_SIZE = ELEMENT_START_SIZE + 2 * (Integer.BYTES + Byte.BYTES) + VALUE_SIZE;
+
+    private static final int COLUMNS_ROW_SIZE = 3 * Integer.BYTES;
+
+    // the deflate format can't expand data further
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // the largest array the virtual machines can allocate
+    private static final int MAX_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final Graduation[] GRADUATIONS = Graduation.values();
+
+    private static final LinkDirection[] LINK_DIRECTIONS = LinkDirection.values();
+
+    public static boolean isBinaryPath(Path path) {
+        return path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith("." + EXTENSION);
+    }
+
+    public static Drawing readDrawing(Path path) throws IOException {
+        ByteBuffer buffer = readFile(path);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a drawing file: " + path);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported drawing file version " + version + ": " + path);
+            }
+            byte flags = buffer.get();
+            int payloadSize = buffer.getInt();
+            boolean isDeflated = (flags & DEFLATED_FLAG) != 0;
+            long maxPayloadSize = isDeflated ? (long) MAX_DEFLATE_RATIO * buffer.remaining() : buffer.remaining();
+            if (payloadSize < 0 || payloadSize > maxPayloadSize) {
+                throw new IOException("Invalid payload size " + payloadSize + ": " + path);
+            }
+            ByteBuffer payload = isDeflated ? inflate(buffer, payloadSize) : buffer.slice(buffer.position(), payloadSize);
+            Drawing model = readPayload(payload);
+            if (payload.hasRemaining()) {
+                throw new IOException("Unexpected data after the drawing: " + path);
+            }
+            return model;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated drawing file: " + path, e);
+        }
+    }
+
+    // read into the heap rather than mapped, since a mapping keeps the file open until it is collected,
+    // which prevents saving back to the same file on Windows
+    private static ByteBuffer readFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_FILE_SIZE) {
+                throw new IOException("Drawing file too large: " + path);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            // a file that shrinks in the meantime is read as truncated
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            return buffer.flip();
+        }
+    }
+
+    // inflated straight from the file content into a buffer of the size given by the header
+    private static ByteBuffer inflate(ByteBuffer buffer, int payloadSize) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(buffer);
+        byte[] payload = new byte[payloadSize];
+        try {
+            int length = 0;
+            while (length < payloadSize) {
+                int inflatedLength = inflater.inflate(payload, length, payloadSize - length);
+                if (inflatedLength == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Truncated compressed drawing");
+                }
+                length += inflatedLength;
+            }
+            // the end of the compressed data must come right after the announced size
+            if (inflater.inflate(new byte[1]) != 0 || !inflater.finished()) {
+                throw new IOException("Compressed drawing larger than its header");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed drawing", e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(payload);
+    }
+
+    private static Drawing readPayload(ByteBuffer buffer) throws IOException {
+        String[] strings = readStrings(buffer);
+
+        Drawing model = GraphHandler.makeEmptyModel();
+        String note = findString(strings, buffer.getInt());
+        model.setNote(note != null ? note : "");
+
+        int elementCount = readCount(buffer, ELEMENT_START_SIZE, "element");
+        List<GraphElement> elements = new ArrayList<>(elementCount);
+        for (int i=0 ; i<elementCount ; i++) {
+            elements.add(readElement(buffer, strings));
+        }
+        GraphHandler.loadElements(elements, model);
+
+        Map<Integer, GraphElement> elementsById = model.getElementsById();
+        int[][] positionColumns = readColumns(buffer);
+        for (int i=0 ; i<positionColumns[0].length ; i++) {
+            model.getPositions().put(GraphHandler.findElementWithId(positionColumns[0][i], elementsById), new Position(positionColumns[1][i], positionColumns[2][i]));
+        }
+        int[][] namePositionColumns = readColumns(buffer);
+        for (int i=0 ; i<namePositionColumns[0].length ; i++) {
+            model.getNamePositions().put(GraphHandler.findElementWithId(namePositionColumns[0][i], elementsById), new Vector(namePositionColumns[1][i], namePositionColumns[2][i]));
+        }
+
+        model.getChangeTracker().markChanged();
+        return model;
+    }
+
+    // a payload describing only some elements, whose references are left unresolved and whose note is null if absent
+    static DrawingJson readPartialPayload(ByteBuffer buffer) throws IOException {
+        String[] strings = readStrings(buffer);
+        String note = findString(strings, buffer.getInt());
+
+        int elementCount = readCount(buffer, ELEMENT_START_SIZE, "element");
+        List<GraphElement> elements = new ArrayList<>(elementCount);
+        for (int i=0 ; i<elementCount ; i++) {
+            elements.add(readElement(buffer, strings));
+        }
+
+        Map<Integer, Position> positions = new HashMap<>();
+        int[][] positionColumns = readColumns(buffer);
+        for (int i=0 ; i<positionColumns[0].length ; i++) {
+            positions.put(positionColumns[0][i], new Position(positionColumns[1][i], positionColumns[2][i]));
+        }
+        Map<Integer, Vector> namePositions = new HashMap<>();
+        int[][] namePositionColumns = readColumns(buffer);
+        for (int i=0 ; i<namePositionColumns[0].length ; i++) {
+            namePositions.put(namePositionColumns[0][i], new Vector(namePositionColumns[1][i], namePositionColumns[2][i]));
+        }
+
+        return DrawingJson.builder()
+                .elements(elements)
+                .positions(positions)
+                .namePositions(namePositions)
+                .note(note)
+                .build();
+    }
+
+    // a corrupt count fails before the allocation, each item taking at least the given size
+    static int readCount(ByteBuffer buffer, int itemSize, String itemName) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / itemSize) {
+            throw new IOException("Invalid " + itemName + " count " + count);
+        }
+        return count;
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) throws IOException {
+        String[] strings = new String[readCount(buffer, Integer.BYTES, "string")];
+        for (int i=0 ; i<strings.length ; i++) {
+            byte[] bytes = new byte[readCount(buffer, Byte.BYTES, "string byte")];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static String findString(String[] strings, int index) throws IOException {
+        if (index == NULL_INDEX) {
+            return null;
+        }
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index);
+        }
+        return strings[index];
+    }
+
+    private static GraphElement readElement(ByteBuffer buffer, String[] strings) throws IOException {
+        byte type = buffer.get();
+        int id = buffer.getInt();
+        if (id < 0 || id > Drawing.MAX_ID) {
+            throw new IOException("Invalid element id " + id);
+        }
+        String name = findString(strings, buffer.getInt());
+        return switch (type) {
+            case OBJECT_TYPE -> Object.builder()
+                    .id(id)
+                    .name(name)
+                    .build();
+            case COMPLETION_TYPE -> Completion.builder()
+                    .id(id)
+                    .name(name)
+                    .baseId(buffer.getInt())
+                    .value(readValue(buffer))
+                    .build();
+            case LINK_TYPE -> Link.builder()
+                    .id(id)
+                    .name(name)
+                    .originId(buffer.getInt())
+                    .originLinkDirection(readLinkDirection(buffer))
+                    .destinationId(buffer.getInt())
+                    .destinationLinkDirection(readLinkDirection(buffer))
+                    .factor(readValue(buffer))
+                    .build();
+            default -> throw new IOException("Invalid element type " + type);
+        };
+    }
+
+    private static Value readValue(ByteBuffer buffer) {
+        byte presence = buffer.get();
+        byte graduation = buffer.get();
+        double numberInGraduation = buffer.getDouble();
+        if ((presence & VALUE_PRESENT) == 0) {
+            return null;
+        }
+        return Value.builder()
+                .graduation(((presence & GRADUATION_PRESENT) != 0) ? GRADUATIONS[graduation] : null)
+                .numberInGraduation(((presence & NUMBER_PRESENT) != 0) ? numberInGraduation : null)
+                .build();
+    }
+
+    private static LinkDirection readLinkDirection(ByteBuffer buffer) {
+        byte direction = buffer.get();
+        return (direction == NULL_INDEX) ? null : LINK_DIRECTIONS[direction];
+    }
+
+    // the ids, x and y columns, read in bulk
+    private static int[][] readColumns(ByteBuffer buffer) throws IOException {
+        int count = readCount(buffer, COLUMNS_ROW_SIZE, "position");
+        int[][] columns = new int[3][count];
+        IntBuffer intBuffer = buffer.asIntBuffer();
+        for (int[] column: columns) {
+            intBuffer.get(column);
+        }
+        buffer.position(buffer.position() + count * COLUMNS_ROW_SIZE);
+        return columns;
+    }
+
+    // the stream is left open
+    public static void writeDrawing(DrawingJson json, OutputStream outputStream, boolean isCompressed) throws IOException {
+        StringTable stringTable = makeStringTable(json);
+        long payloadSize = computePayloadSize(json, stringTable);
+        if (payloadSize > Integer.MAX_VALUE) {
+            throw new IOException("Drawing too large for the binary format: " + payloadSize + " bytes");
+        }
+        OutputStream bufferedOutputStream = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        DataOutputStream headerOutputStream = new DataOutputStream(bufferedOutputStream);
+        headerOutputStream.writeInt(MAGIC);
+        headerOutputStream.writeShort(VERSION);
+        headerOutputStream.writeByte(isCompressed ? DEFLATED_FLAG : 0);
+        headerOutputStream.writeInt((int) payloadSize);
+        if (isCompressed) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(bufferedOutputStream, deflater, BUFFER_SIZE);
+            // the data stream writes byte by byte, which the deflater must not see
+            writePayload(json, stringTable, new DataOutputStream(new BufferedOutputStream(deflaterOutputStream, BUFFER_SIZE)));
+            deflaterOutputStream.finish();
+            deflater.end();
+        }
+        else {
+            writePayload(json, stringTable, headerOutputStream);
+        }
+        bufferedOutputStream.flush();
+    }
+
+    // the strings of the drawing, encoded in the order of their indexes
+    private record StringTable(Map<String, Integer> indexes, List<byte[]> encodedStrings) {}
+
+    private static StringTable makeStringTable(DrawingJson json) {
+        Map<String, Integer> stringIndexes = new LinkedHashMap<>();
+        findStringIndex(json.getNote(), stringIndexes);
+        for (GraphElement element: json.getElements()) {
+            findStringIndex(element.getName(), stringIndexes);
+        }
+        List<byte[]> encodedStrings = new ArrayList<>(stringIndexes.size());
+        for (String string: stringIndexes.keySet()) {
+            encodedStrings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        return new StringTable(stringIndexes, encodedStrings);
+    }
+
+    // the size written by writePayload, known before writing so that the reader can allocate the payload at once
+    private static long computePayloadSize(DrawingJson json, StringTable stringTable) {
+        long size = Integer.BYTES;
+        for (byte[] bytes: stringTable.encodedStrings()) {
+            size += Integer.BYTES + bytes.length;
+        }
+        size += 2 * Integer.BYTES;
+        for (GraphElement element: json.getElements()) {
+            size += switch (element) {
+                case Object ignored -> ELEMENT_START_SIZE;
+                case Completion ignored -> COMPLETION_SIZE;
+                case Link ignored -> LINK_SIZE;
+            };
+        }
+        size += 2 * Integer.BYTES + (long) COLUMNS_ROW_SIZE * (json.getPositions().size() + json.getNamePositions().size());
+        return size;
+    }
+
+    static void writePayload(DrawingJson json, DataOutputStream outputStream) throws IOException {
+        writePayload(json, makeStringTable(json), outputStream);
+    }
+
+    private static void writePayload(DrawingJson json, StringTable stringTable, DataOutputStream outputStream) throws IOException {
+        List<GraphElement> elements = json.getElements();
+        Map<String, Integer> stringIndexes = stringTable.indexes();
+
+        outputStream.writeInt(stringTable.encodedStrings().size());
+        for (byte[] bytes: stringTable.encodedStrings()) {
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+        outputStream.writeInt(findStringIndex(json.getNote(), stringIndexes));
+
+        outputStream.writeInt(elements.size());
+        for (GraphElement element: elements) {
+            writeElement(element, findStringIndex(element.getName(), stringIndexes), outputStream);
+        }
+
+        writeColumns(json.getPositions(), Position::x, Position::y, outputStream);
+        writeColumns(json.getNamePositions(), Vector::x, Vector::y, outputStream);
+        outputStream.flush();
+    }
+
+    private static int findStringIndex(String string, Map<String, Integer> stringIndexes) {
+        if (string == null) {
+            return NULL_INDEX;
+        }
+        return stringIndexes.computeIfAbsent(string, key -> stringIndexes.size());
+    }
+
+    private static void writeElement(GraphElement element, int nameIndex, DataOutputStream outputStream) throws IOException {
+        switch (element) {
+            case Object ignored -> {
+                writeElementStart(OBJECT_TYPE, element, nameIndex, outputStream);
+            }
+            case Completion completion -> {
+                writeElementStart(COMPLETION_TYPE, element, nameIndex, outputStream);
+                outputStream.writeInt(completion.getBaseId());
+                writeValue(completion.getValue(), outputStream);
+            }
+            case Link link -> {
+                writeElementStart(LINK_TYPE, element, nameIndex, outputStream);
+                outputStream.writeInt(link.getOriginId());
+                writeLinkDirection(link.getOriginLinkDirection(), outputStream);
+                outputStream.writeInt(link.getDestinationId());
+                writeLinkDirection(link.getDestinationLinkDirection(), outputStream);
+                writeValue(link.getFactor(), outputStream);
+            }
+        }
+    }
+
+    private static void writeElementStart(byte type, GraphElement element, int nameIndex, DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(type);
+        outputStream.writeInt(element.getId());
+        outputStream.writeInt(nameIndex);
+    }
+
+    // fixed size, the absent parts being zeros
+    private static void writeValue(Value value, DataOutputStream outputStream) throws IOException {
+        byte presence = 0;
+        Graduation graduation = null;
+        Double numberInGraduation = null;
+        if (value != null) {
+            graduation = value.getGraduation();
+            numberInGraduation = value.getNumberInGraduation();
+            presence = (byte) (VALUE_PRESENT | (graduation != null ? GRADUATION_PRESENT : 0) | (numberInGraduation != null ? NUMBER_PRESENT : 0));
+        }
+        outputStream.writeByte(presence);
+        outputStream.writeByte(graduation != null ? graduation.ordinal() : 0);
+        outputStream.writeDouble(numberInGraduation != null ? numberInGraduation : 0);
+    }
+
+    private static void writeLinkDirection(LinkDirection direction, DataOutputStream outputStream) throws IOException {
+        outputStream.writeByte(direction != null ? direction.ordinal() : NULL_INDEX);
+    }
+
+    private static <V> void writeColumns(Map<Integer, V> positions, ToIntFunction<V> xFunction, ToIntFunction<V> yFunction, DataOutputStream outputStream) throws IOException {
+        List<Map.Entry<Integer, V>> entries = new ArrayList<>(positions.entrySet());
+        outputStream.writeInt(entries.size());
+        for (Map.Entry<Integer, V> entry: entries) {
+            outputStream.writeInt(entry.getKey());
+        }
+        for (Map.Entry<Integer, V> entry: entries) {
+            outputStream.writeInt(xFunction.applyAsInt(entry.getValue()));
+        }
+        for (Map.Entry<Integer, V> entry: entries) {
+            outputStream.writeInt(yFunction.applyAsInt(entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+
+import java.util.*;
+
+// the undo history, made of the states of the elements before and after each change
+public class DrawingHistory {
+
+    private final Drawing model;
+
+    private final long memoryLimit;
+
+    // the state of the drawing at the current step
+    private final Map<Integer, ElementState> currentStates = new HashMap<>();
+
+    private String currentNote;
+
+    // the delta at index i leads from step firstStep+i to the next one
+    private final List<DrawingDelta> deltas = new ArrayList<>();
+
+    // complete states, so that reaching a distant step doesn't need to apply every delta on the way
+    private final TreeMap<Integer, Checkpoint> checkpoints = new TreeMap<>();
+
+    private int firstStep = 0;
+
+    private int currentStep = 0;
+
+    private long heapCost = 0;
+
+    // the last step when it was a nudge of the elements, so that a burst of nudges makes a single step
+    private MoveStep lastMoveStep;
+
+    private static final int CHECKPOINT_INTERVAL = 100;
+
+    // the longest pause between two nudges of the same burst, in milliseconds
+    private static final long MOVE_MERGE_DELAY = 1000;
+
+    // rough estimations of the memory used by the history objects
+    private static final int ELEMENT_STATE_COST = 160;
+
+    private static final int MAP_ENTRY_COST = 48;
+
+    private static final int DELTA_COST = 64;
+
+    // the element is a detached copy, whose references are only ids
+    private record ElementState(GraphElement element, Position position, Vector namePosition) {}
+
+    // a missing state in a map means that the element does not exist
+    private record DrawingDelta(Map<Integer, ElementState> previousStates, Map<Integer, ElementState> newStates, String previousNote, String newNote, long heapCost) {}
+
+    private record Checkpoint(Map<Integer, ElementState> states, String note, long heapCost) {}
+
+    private record MoveStep(Set<Integer> ids, Vector shift, long time) {}
+
+    public DrawingHistory(Drawing model, long memoryLimit) {
+        this.model = model;
+        this.memoryLimit = memoryLimit;
+        reset();
+    }
+
+    // forgets the history, the current state becoming the first step
+    public void reset() {
+        currentStates.clear();
+        for (GraphElement element: model.getElements()) {
+            currentStates.put(element.getId(), makeElementState(element));
+        }
+        currentNote = model.getNote();
+        deltas.clear();
+        checkpoints.clear();
+        firstStep = 0;
+        currentStep = 0;
+        heapCost = 0;
+        lastMoveStep = null;
+        addCheckpoint();
+    }
+
+    // only the nudges, the small moves made with the keyboard, can be merged with the previous step
+    public void registerChanges(Set<GraphElement> changedElements, boolean isNudge) {
+        // the steps that could be redone are lost
+        deltas.subList(currentStep - firstStep, deltas.size()).forEach(delta -> heapCost -= delta.heapCost());
+        deltas.subList(currentStep - firstStep, deltas.size()).clear();
+        checkpoints.tailMap(currentStep, false).values().forEach(checkpoint -> heapCost -= checkpoint.heapCost());
+        checkpoints.tailMap(currentStep, false).clear();
+
+        Map<Integer, ElementState> previousStates = new HashMap<>();
+        Map<Integer, ElementState> newStates = new HashMap<>();
+        for (GraphElement changedElement: changedElements) {
+            int id = changedElement.getId();
+            if (previousStates.containsKey(id) || newStates.containsKey(id)) {
+                continue;
+            }
+            GraphElement element = model.getElementsById().get(id);
+            ElementState previousState = currentStates.get(id);
+            ElementState newState = (element != null) ? makeElementState(element, previousState) : null;
+            putIfNotNull(previousStates, id, previousState);
+            putIfNotNull(newStates, id, newState);
+            putOrRemove(currentStates, id, newState);
+        }
+        String previousNote = currentNote;
+        currentNote = model.getNote();
+
+        Vector shift = (isNudge && previousNote.equals(currentNote)) ? findCommonShift(previousStates, newStates) : null;
+        long time = System.currentTimeMillis();
+        if (shift != null && canMergeMove(newStates.keySet(), shift, time)) {
+            mergeWithLastStep(newStates);
+            lastMoveStep = new MoveStep(lastMoveStep.ids(), shift, time);
+            return;
+        }
+        lastMoveStep = (shift != null) ? new MoveStep(newStates.keySet(), shift, time) : null;
+
+        long deltaHeapCost = DELTA_COST + estimateStatesHeapCost(previousStates) + estimateStatesHeapCost(newStates) + 2L * (previousNote.length() + currentNote.length());
+        deltas.add(new DrawingDelta(previousStates, newStates, previousNote, currentNote, deltaHeapCost));
+        heapCost += deltaHeapCost;
+        currentStep += 1;
+        if (currentStep % CHECKPOINT_INTERVAL == 0) {
+            addCheckpoint();
+        }
+        trimToMemoryLimit();
+    }
+
+    // the shift of the positions when it is the same for all the elements and nothing else changed, otherwise null
+    private static Vector findCommonShift(Map<Integer, ElementState> previousStates, Map<Integer, ElementState> newStates) {
+        if (newStates.isEmpty() || previousStates.size() != newStates.size()) {
+            return null;
+        }
+        Vector commonShift = null;
+        for (Map.Entry<Integer, ElementState> entry: newStates.entrySet()) {
+            ElementState previousState = previousStates.get(entry.getKey());
+            ElementState newState = entry.getValue();
+            // the saved elements are shared between the states when their attributes are unchanged
+            if (previousState == null || previousState.element() != newState.element() || previousState.position() == null || newState.position() == null
+                    || !Objects.equals(previousState.namePosition(), newState.namePosition())) {
+                return null;
+            }
+            Vector shift = Vector.between(previousState.position(), newState.position());
+            if (commonShift == null) {
+                commonShift = shift;
+            }
+            else if (!commonShift.equals(shift)) {
+                return null;
+            }
+        }
+        return commonShift;
+    }
+
+    // the nudges merge when they apply to the same elements in the same direction, without pause between them
+    private boolean canMergeMove(Set<Integer> ids, Vector shift, long time) {
+        if (lastMoveStep == null || currentStep <= firstStep || canRedo()) {
+            return false;
+        }
+        return time - lastMoveStep.time() <= MOVE_MERGE_DELAY
+                && lastMoveStep.ids().equals(ids)
+                && Vector.discriminant(lastMoveStep.shift(), shift) == 0
+                && Vector.scalarProduct(lastMoveStep.shift(), shift) > 0;
+    }
+
+    // the last step leads directly to the new states
+    private void mergeWithLastStep(Map<Integer, ElementState> newStates) {
+        DrawingDelta lastDelta = deltas.get(deltas.size() - 1);
+        long deltaHeapCost = DELTA_COST + estimateStatesHeapCost(lastDelta.previousStates()) + estimateStatesHeapCost(newStates) + 2L * (lastDelta.previousNote().length() + currentNote.length());
+        deltas.set(deltas.size() - 1, new DrawingDelta(lastDelta.previousStates(), newStates, lastDelta.previousNote(), currentNote, deltaHeapCost));
+        heapCost += deltaHeapCost - lastDelta.heapCost();
+        // a checkpoint of the last step holds the states before the merge
+        Checkpoint checkpoint = checkpoints.remove(currentStep);
+        if (checkpoint != null) {
+            heapCost -= checkpoint.heapCost();
+            addCheckpoint();
+        }
+    }
+
+    private void addCheckpoint() {
+        long checkpointHeapCost = (long) currentStates.size() * MAP_ENTRY_COST;
+        checkpoints.put(currentStep, new Checkpoint(Map.copyOf(currentStates), currentNote, checkpointHeapCost));
+        heapCost += checkpointHeapCost;
+    }
+
+    private void trimToMemoryLimit() {
+        // the oldest steps are forgotten, but the current one must remain reachable
+        while (heapCost > memoryLimit && firstStep < currentStep) {
+            DrawingDelta oldestDelta = deltas.remove(0);
+            heapCost -= oldestDelta.heapCost();
+            Checkpoint oldestCheckpoint = checkpoints.remove(firstStep);
+            if (oldestCheckpoint != null) {
+                heapCost -= oldestCheckpoint.heapCost();
+            }
+            firstStep += 1;
+        }
+    }
+
+    public boolean canUndo() {
+        return currentStep > firstStep;
+    }
+
+    public boolean canRedo() {
+        return currentStep < firstStep + deltas.size();
+    }
+
+    public boolean isAtInitialStep() {
+        return currentStep == 0;
+    }
+
+    public void undo() {
+        if (canUndo()) {
+            moveToStep(currentStep - 1);
+        }
+    }
+
+    public void redo() {
+        if (canRedo()) {
+            moveToStep(currentStep + 1);
+        }
+    }
+
+    public void moveToStep(int step) {
+        if (step < firstStep || step > firstStep + deltas.size() || step == currentStep) {
+            return;
+        }
+        lastMoveStep = null;
+        // start from a checkpoint when the deltas on the way are larger than a complete state
+        Map.Entry<Integer, Checkpoint> checkpointEntry = findNearestCheckpoint(step);
+        if (checkpointEntry != null && countChangedStatesBetween(currentStep, step) > currentStates.size() + countChangedStatesBetween(checkpointEntry.getKey(), step)) {
+            applyCheckpoint(checkpointEntry.getValue());
+            currentStep = checkpointEntry.getKey();
+        }
+        while (currentStep > step) {
+            DrawingDelta delta = deltas.get(currentStep - 1 - firstStep);
+            applyStates(delta.previousStates(), delta.newStates().keySet(), delta.previousNote());
+            currentStep -= 1;
+        }
+        while (currentStep < step) {
+            DrawingDelta delta = deltas.get(currentStep - firstStep);
+            applyStates(delta.newStates(), delta.previousStates().keySet(), delta.newNote());
+            currentStep += 1;
+        }
+    }
+
+    private Map.Entry<Integer, Checkpoint> findNearestCheckpoint(int step) {
+        Map.Entry<Integer, Checkpoint> floorEntry = checkpoints.floorEntry(step);
+        Map.Entry<Integer, Checkpoint> ceilingEntry = checkpoints.ceilingEntry(step);
+        if (floorEntry == null || ceilingEntry == null) {
+            return (floorEntry != null) ? floorEntry : ceilingEntry;
+        }
+        return (step - floorEntry.getKey() <= ceilingEntry.getKey() - step) ? floorEntry : ceilingEntry;
+    }
+
+    private int countChangedStatesBetween(int step1, int step2) {
+        int count = 0;
+        for (int step = Math.min(step1, step2) ; step < Math.max(step1, step2) ; step++) {
+            DrawingDelta delta = deltas.get(step - firstStep);
+            count += delta.previousStates().size() + delta.newStates().size();
+        }
+        return count;
+    }
+
+    private void applyCheckpoint(Checkpoint checkpoint) {
+        Map<Integer, ElementState> changedStates = new HashMap<>();
+        for (Map.Entry<Integer, ElementState> entry: checkpoint.states().entrySet()) {
+            if (currentStates.get(entry.getKey()) != entry.getValue()) {
+                changedStates.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Set<Integer> removedIds = new HashSet<>(currentStates.keySet());
+        removedIds.removeAll(checkpoint.states().keySet());
+        applyStates(changedStates, removedIds, checkpoint.note());
+    }
+
+    // the ids absent from the states are removed from the drawing
+    private void applyStates(Map<Integer, ElementState> states, Set<Integer> changedIds, String note) {
+        List<GraphElement> elementsToRemove = new ArrayList<>();
+        for (Integer id: changedIds) {
+            GraphElement element = model.getElementsById().get(id);
+            if (!states.containsKey(id) && element != null) {
+                elementsToRemove.add(element);
+                currentStates.remove(id);
+            }
+        }
+        GraphHandler.removeElements(elementsToRemove, model);
+
+        List<GraphElement> elementsToRestore = new ArrayList<>();
+        for (Map.Entry<Integer, ElementState> entry: states.entrySet()) {
+            ElementState state = entry.getValue();
+            GraphElement element = model.getElementsById().get(entry.getKey());
+            if (element == null) {
+                element = ModelStateManager.deepCopy(state.element(), GraphElement.class);
+                elementsToRestore.add(element);
+            }
+            else {
+                GraphHandler.restoreAttributes(element, state.element(), model);
+            }
+            restorePositions(element, state);
+            currentStates.put(entry.getKey(), state);
+        }
+        GraphHandler.restoreElements(elementsToRestore, model);
+
+        if (!note.equals(model.getNote())) {
+            model.setNote(note);
+            model.getChangeTracker().markChanged();
+        }
+        currentNote = note;
+    }
+
+    private void restorePositions(GraphElement element, ElementState state) {
+        if (state.position() != null) {
+            model.getPositions().put(element, state.position());
+        }
+        else {
+            model.getPositions().remove(element);
+        }
+        if (state.namePosition() != null) {
+            model.getNamePositions().put(element, state.namePosition());
+        }
+        else {
+            model.getNamePositions().remove(element);
+        }
+    }
+
+    private ElementState makeElementState(GraphElement element) {
+        return makeElementState(element, null);
+    }
+
+    // the saved element of the previous state is reused when the attributes haven't changed, as when the element was only moved
+    private ElementState makeElementState(GraphElement element, ElementState previousState) {
+        GraphElement savedElement = (previousState != null && ModelStateManager.areDeepEqual(previousState.element(), element))
+                ? previousState.element()
+                : ModelStateManager.deepCopy(element, GraphElement.class);
+        return new ElementState(savedElement, model.getPositions().get(element), model.getNamePositions().get(element));
+    }
+
+    private static long estimateStatesHeapCost(Map<Integer, ElementState> states) {
+        long cost = 0;
+        for (ElementState state: states.values()) {
+            String name = state.element().getName();
+            cost += MAP_ENTRY_COST + ELEMENT_STATE_COST + (name != null ? 2L * name.length() : 0);
+        }
+        return cost;
+    }
+
+    private static <K,V> void putIfNotNull(Map<K,V> map, K key, V value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    private static <K,V> void putOrRemove(Map<K,V> map, K key, V value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+        else {
+            map.remove(key);
+        }
+    }
+
+    public long getHeapCost() {
+        return heapCost;
+    }
+}
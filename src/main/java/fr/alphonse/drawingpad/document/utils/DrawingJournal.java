@@ -0,0 +1,406 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+
+import javax.swing.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*
+ * the changes made to a drawing since its file was written, appended to a file next to it
+ * so that they can be recovered if the application stops before the next save
+ * header: magic, version, size and modification time of the drawing file the changes apply to
+ * records: length, CRC32 and body, made of the ids of the removed elements and a partial binary payload
+ */
+public class DrawingJournal {
+
+    private static final int MAGIC = 0x44504a4c; // "DPJL"
+
+    private static final short VERSION = 1;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + 2 * Long.BYTES;
+
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Drawing model;
+
+    // called on the first failure only, the journal being disabled until the next save
+    private final Consumer<Exception> failureListener;
+
+    private boolean isFailureReported = false;
+
+    private Path journalPath;
+
+    private FileChannel channel;
+
+    // the records buffered but not written yet are included
+    private long journalSize;
+
+    // the records appended during a batch of events are written together at its end
+    private final ByteBuffer pendingRecords = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private boolean isFlushPending = false;
+
+    // the bytes of the records dropped by the compactions, so that the positions given out remain valid
+    private long droppedSize = 0;
+
+    // the note is only written when it changes
+    private String journaledNote;
+
+    private boolean isClosed = false;
+
+    private record BaseFingerprint(long size, long modifiedTime) {}
+
+    public DrawingJournal(Drawing model, Consumer<Exception> failureListener) {
+        this.model = model;
+        this.failureListener = failureListener;
+    }
+
+    private static Path findJournalPath(Path path) {
+        return path.resolveSibling("." + path.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    private static BaseFingerprint findFingerprint(Path path) throws IOException {
+        return new BaseFingerprint(Files.size(path), Files.getLastModifiedTime(path).toMillis());
+    }
+
+    // to call on a drawing just read from the file, returns whether changes were recovered
+    public boolean recover(Path path) {
+        journalPath = findJournalPath(path);
+        journaledNote = model.getNote();
+        boolean hasRecoveredChanges = false;
+        try {
+            long validSize = 0;
+            if (Files.exists(journalPath)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+                if (isHeaderValid(buffer, findFingerprint(path))) {
+                    validSize = replayRecords(buffer);
+                    hasRecoveredChanges = (validSize > HEADER_SIZE);
+                }
+            }
+            if (validSize == 0) {
+                writeNewJournal(findFingerprint(path), ByteBuffer.allocate(0));
+            }
+            else {
+                // the last record may have been cut by the crash
+                openChannel();
+                channel.truncate(validSize);
+                journalSize = validSize;
+            }
+            journaledNote = model.getNote();
+        } catch (IOException e) {
+            reportFailure(e);
+            closeChannel();
+        }
+        return hasRecoveredChanges;
+    }
+
+    private static boolean isHeaderValid(ByteBuffer buffer, BaseFingerprint fingerprint) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            return false;
+        }
+        // a journal written for another version of the file doesn't apply
+        return buffer.getLong() == fingerprint.size() && buffer.getLong() == fingerprint.modifiedTime();
+    }
+
+    // returns the size of the valid part of the journal
+    private long replayRecords(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int recordStart = buffer.position();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                return recordStart;
+            }
+            ByteBuffer body = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return recordStart;
+            }
+            try {
+                applyRecord(body);
+            } catch (IOException | RuntimeException e) {
+                reportFailure(e);
+                return recordStart;
+            }
+            buffer.position(buffer.position() + length);
+        }
+        return buffer.position();
+    }
+
+    private void applyRecord(ByteBuffer body) throws IOException {
+        Map<Integer, GraphElement> elementsById = model.getElementsById();
+
+        int removedCount = DrawingBinaryFormat.readCount(body, Integer.BYTES, "removed element");
+        List<GraphElement> elementsToRemove = new ArrayList<>(removedCount);
+        for (int i=0 ; i<removedCount ; i++) {
+            GraphElement element = elementsById.get(body.getInt());
+            if (element != null) {
+                elementsToRemove.add(element);
+            }
+        }
+        GraphHandler.removeElements(elementsToRemove, model);
+
+        DrawingJson changes = DrawingBinaryFormat.readPartialPayload(body);
+        List<GraphElement> elementsToRestore = new ArrayList<>();
+        for (GraphElement savedElement: changes.getElements()) {
+            GraphElement element = elementsById.get(savedElement.getId());
+            if (element != null) {
+                GraphHandler.restoreAttributes(element, savedElement, model);
+            }
+            else {
+                elementsToRestore.add(savedElement);
+            }
+        }
+        GraphHandler.restoreElements(elementsToRestore, model);
+
+        for (GraphElement savedElement: changes.getElements()) {
+            GraphElement element = elementsById.get(savedElement.getId());
+            putOrRemove(model.getPositions(), element, changes.getPositions().get(element.getId()));
+            putOrRemove(model.getNamePositions(), element, changes.getNamePositions().get(element.getId()));
+        }
+
+        if (changes.getNote() != null) {
+            model.setNote(changes.getNote());
+            model.getChangeTracker().markChanged();
+        }
+    }
+
+    private static <V> void putOrRemove(Map<GraphElement, V> positions, GraphElement element, V position) {
+        if (position != null) {
+            positions.put(element, position);
+        }
+        else {
+            positions.remove(element);
+        }
+    }
+
+    // records the current state of the changed elements, the removed ones being absent from the drawing
+    public void appendChanges(Set<GraphElement> changedElements) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            ByteBuffer record = makeRecord(changedElements);
+            journalSize += record.remaining();
+            if (record.remaining() > pendingRecords.remaining()) {
+                writePendingRecords();
+            }
+            if (record.remaining() > pendingRecords.capacity()) {
+                writeFully(record);
+                return;
+            }
+            pendingRecords.put(record);
+            if (!isFlushPending) {
+                isFlushPending = true;
+                SwingUtilities.invokeLater(this::flush);
+            }
+        } catch (IOException e) {
+            reportFailure(e);
+            closeChannel();
+        }
+    }
+
+    // writes the buffered records, to call before reading the journal back
+    public void flush() {
+        isFlushPending = false;
+        if (channel == null) {
+            return;
+        }
+        try {
+            writePendingRecords();
+        } catch (IOException e) {
+            reportFailure(e);
+            closeChannel();
+        }
+    }
+
+    private void writePendingRecords() throws IOException {
+        pendingRecords.flip();
+        try {
+            writeFully(pendingRecords);
+        } finally {
+            pendingRecords.clear();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void reportFailure(Exception exception) {
+        if (isFailureReported) {
+            return;
+        }
+        isFailureReported = true;
+        failureListener.accept(exception);
+    }
+
+    private ByteBuffer makeRecord(Set<GraphElement> changedElements) throws IOException {
+        Map<Integer, GraphElement> elementsById = model.getElementsById();
+        Set<Integer> removedIds = new HashSet<>();
+        Set<Integer> keptIds = new HashSet<>();
+        List<GraphElement> elements = new ArrayList<>();
+        Map<Integer, Position> positions = new HashMap<>();
+        Map<Integer, Vector> namePositions = new HashMap<>();
+        for (GraphElement changedElement: changedElements) {
+            int id = changedElement.getId();
+            GraphElement element = elementsById.get(id);
+            if (element == null) {
+                removedIds.add(id);
+                continue;
+            }
+            if (!keptIds.add(id)) {
+                continue;
+            }
+            elements.add(element);
+            putIfNotNull(positions, id, model.getPositions().get(element));
+            putIfNotNull(namePositions, id, model.getNamePositions().get(element));
+        }
+        String note = model.getNote();
+        boolean hasNoteChanged = !Objects.equals(note, journaledNote);
+        journaledNote = note;
+
+        ByteArrayOutputStream bodyStream = new ByteArrayOutputStream();
+        DataOutputStream outputStream = new DataOutputStream(bodyStream);
+        outputStream.writeInt(removedIds.size());
+        for (int id: removedIds) {
+            outputStream.writeInt(id);
+        }
+        DrawingJson changes = DrawingJson.builder()
+                .elements(elements)
+                .positions(positions)
+                .namePositions(namePositions)
+                .note(hasNoteChanged ? note : null)
+                .build();
+        DrawingBinaryFormat.writePayload(changes, outputStream);
+
+        byte[] body = bodyStream.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        record.putInt(body.length);
+        record.putInt((int) crc.getValue());
+        record.put(body);
+        return record.flip();
+    }
+
+    private static <V> void putIfNotNull(Map<Integer, V> map, int id, V value) {
+        if (value != null) {
+            map.put(id, value);
+        }
+    }
+
+    // the position to give back to compact once the state at this point is saved
+    public long findPosition() {
+        if (channel == null) {
+            return droppedSize;
+        }
+        return droppedSize + journalSize - HEADER_SIZE;
+    }
+
+    // the file now holds the changes made before the position, only the later ones are kept
+    public void compact(Path path, long position) {
+        if (isClosed) {
+            return;
+        }
+        flush();
+        try {
+            ByteBuffer remainingRecords = ByteBuffer.allocate(0);
+            if (channel != null && findJournalPath(path).equals(journalPath)) {
+                long keptStart = HEADER_SIZE + position - droppedSize;
+                remainingRecords = ByteBuffer.allocate((int) (journalSize - keptStart));
+                try (FileChannel readChannel = FileChannel.open(journalPath, StandardOpenOption.READ)) {
+                    readChannel.position(keptStart);
+                    while (remainingRecords.hasRemaining()) {
+                        if (readChannel.read(remainingRecords) < 0) {
+                            throw new EOFException("The journal " + journalPath + " is shorter than its records");
+                        }
+                    }
+                }
+                remainingRecords.flip();
+            }
+            journalPath = findJournalPath(path);
+            writeNewJournal(findFingerprint(path), remainingRecords);
+            droppedSize = position;
+        } catch (IOException e) {
+            reportFailure(e);
+            closeChannel();
+        }
+    }
+
+    private void writeNewJournal(BaseFingerprint fingerprint, ByteBuffer records) throws IOException {
+        closeChannel();
+        Path temporaryPath = journalPath.resolveSibling(journalPath.getFileName() + ".new");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putLong(fingerprint.size())
+                .putLong(fingerprint.modifiedTime())
+                .flip();
+        try (FileChannel writeChannel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining() || records.hasRemaining()) {
+                writeChannel.write(new ByteBuffer[]{header, records});
+            }
+            writeChannel.force(true);
+        }
+        Files.move(temporaryPath, journalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        openChannel();
+        journalSize = HEADER_SIZE + records.limit();
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // the records not written yet are lost with the channel
+    private void closeChannel() {
+        pendingRecords.clear();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    // when the document is closed, its remaining changes are either saved or discarded
+    public void delete() {
+        isClosed = true;
+        closeChannel();
+        if (journalPath == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(journalPath);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
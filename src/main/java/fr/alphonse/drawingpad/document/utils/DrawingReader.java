@@ -0,0 +1,185 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.PositionTable;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import lombok.experimental.UtilityClass;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// reads a drawing file in a single pass, without going through a DrawingJson
+@UtilityClass
+public class DrawingReader {
+
+    private static final JsonMapper JSON_MAPPER = new JsonMapper();
+
+    private static final ObjectReader ELEMENT_READER = JSON_MAPPER.readerFor(GraphElement.class);
+
+    public static Drawing readDrawing(Path path) throws IOException {
+        try (JsonParser parser = JSON_MAPPER.createParser(path.toFile())) {
+            return readDrawing(parser);
+        }
+    }
+
+    private static Drawing readDrawing(JsonParser parser) throws IOException {
+        Drawing model = GraphHandler.makeEmptyModel();
+        // the positions read before the elements wait for them
+        Map<Integer, Position> pendingPositions = new HashMap<>();
+        Map<Integer, Vector> pendingNamePositions = new HashMap<>();
+        boolean areElementsLoaded = false;
+
+        expectToken(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (fieldName) {
+                case "elements" -> {
+                    GraphHandler.loadElements(readElements(parser, token), model);
+                    areElementsLoaded = true;
+                    putPositions(parser, pendingPositions, model.getPositions(), model);
+                    putPositions(parser, pendingNamePositions, model.getNamePositions(), model);
+                }
+                case "positions" -> readPositions(parser, token, Position::new, areElementsLoaded ? null : pendingPositions, model.getPositions(), model);
+                case "namePositions" -> readPositions(parser, token, Vector::new, areElementsLoaded ? null : pendingNamePositions, model.getNamePositions(), model);
+                case "note" -> {
+                    expectToken(parser, token, JsonToken.VALUE_STRING);
+                    model.setNote(parser.getText());
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        expectToken(parser, parser.currentToken(), JsonToken.END_OBJECT);
+
+        if (!areElementsLoaded && !(pendingPositions.isEmpty() && pendingNamePositions.isEmpty())) {
+            throw new JsonParseException(parser, "Positions without elements");
+        }
+        model.getChangeTracker().markChanged();
+        return model;
+    }
+
+    private static List<GraphElement> readElements(JsonParser parser, JsonToken token) throws IOException {
+        expectToken(parser, token, JsonToken.START_ARRAY);
+        List<GraphElement> elements = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            expectToken(parser, parser.currentToken(), JsonToken.START_OBJECT);
+            GraphElement element = ELEMENT_READER.readValue(parser);
+            if (element.getId() == null || element.getId() < 0 || element.getId() > Drawing.MAX_ID) {
+                throw new JsonParseException(parser, "Invalid element id " + element.getId());
+            }
+            elements.add(element);
+        }
+        checkReferences(parser, elements);
+        return elements;
+    }
+
+    // the elements can reference the ones that come after them
+    private static void checkReferences(JsonParser parser, List<GraphElement> elements) throws IOException {
+        Set<Integer> ids = new HashSet<>();
+        for (GraphElement element: elements) {
+            ids.add(element.getId());
+        }
+        for (GraphElement element: elements) {
+            switch (element) {
+                case Object ignored -> GraphHandler.doNothing();
+                case Completion completion -> checkReference(parser, completion.getBaseId(), ids, element);
+                case Link link -> {
+                    checkReference(parser, link.getOriginId(), ids, element);
+                    checkReference(parser, link.getDestinationId(), ids, element);
+                }
+            }
+        }
+    }
+
+    private static void checkReference(JsonParser parser, Integer id, Set<Integer> ids, GraphElement element) throws IOException {
+        if (id == null || !ids.contains(id)) {
+            throw new JsonParseException(parser, "Invalid reference " + id + " in element " + element.getId());
+        }
+    }
+
+    // without pending map, the positions go directly to the model
+    private static <V> void readPositions(JsonParser parser, JsonToken token, PositionTable.CoordinateFactory<V> coordinateFactory, Map<Integer, V> pendingPositions, Map<GraphElement, V> positions, Drawing model) throws IOException {
+        expectToken(parser, token, JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int id = parseId(parser);
+            V position = readCoordinates(parser, parser.nextToken(), coordinateFactory);
+            if (pendingPositions != null) {
+                pendingPositions.put(id, position);
+            }
+            else {
+                positions.put(findElement(parser, id, model), position);
+            }
+        }
+    }
+
+    // the coordinates are integers, the missing ones being zero
+    private static <V> V readCoordinates(JsonParser parser, JsonToken token, PositionTable.CoordinateFactory<V> coordinateFactory) throws IOException {
+        expectToken(parser, token, JsonToken.START_OBJECT);
+        int x = 0;
+        int y = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            switch (fieldName) {
+                case "x" -> {
+                    expectToken(parser, valueToken, JsonToken.VALUE_NUMBER_INT);
+                    x = parser.getIntValue();
+                }
+                case "y" -> {
+                    expectToken(parser, valueToken, JsonToken.VALUE_NUMBER_INT);
+                    y = parser.getIntValue();
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return coordinateFactory.make(x, y);
+    }
+
+    private static <V> void putPositions(JsonParser parser, Map<Integer, V> pendingPositions, Map<GraphElement, V> positions, Drawing model) throws IOException {
+        for (Map.Entry<Integer, V> entry: pendingPositions.entrySet()) {
+            positions.put(findElement(parser, entry.getKey(), model), entry.getValue());
+        }
+        pendingPositions.clear();
+    }
+
+    private static GraphElement findElement(JsonParser parser, int id, Drawing model) throws IOException {
+        GraphElement element = model.getElementsById().get(id);
+        if (element == null) {
+            throw new JsonParseException(parser, "Position of a missing element " + id);
+        }
+        return element;
+    }
+
+    private static int parseId(JsonParser parser) throws IOException {
+        try {
+            return Integer.parseInt(parser.currentName());
+        } catch (NumberFormatException e) {
+            throw new JsonParseException(parser, "Invalid element id " + parser.currentName());
+        }
+    }
+
+    private static void expectToken(JsonParser parser, JsonToken token, JsonToken expectedToken) throws IOException {
+        if (token != expectedToken) {
+            throw new JsonParseException(parser, "Expected " + expectedToken + " but found " + token);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import lombok.experimental.UtilityClass;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// writes a drawing file so that it is either entirely replaced or left untouched
+@UtilityClass
+public class DrawingWriter {
+
+    private static final ObjectWriter JSON_WRITER = new JsonMapper()
+            .writerFor(DrawingJson.class)
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private static final String TEMPORARY_SUFFIX = ".saving";
+
+    public static void writeDrawing(DrawingJson json, Path path, boolean isCompressed) throws IOException {
+        // next to the file, so that the rename stays on the same file system
+        Path temporaryPath = path.resolveSibling("." + path.getFileName() + TEMPORARY_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream outputStream = Channels.newOutputStream(channel);
+                if (DrawingBinaryFormat.isBinaryPath(path)) {
+                    DrawingBinaryFormat.writeDrawing(json, outputStream, isCompressed);
+                }
+                else {
+                    JSON_WRITER.writeValue(outputStream, json);
+                }
+                outputStream.flush();
+                channel.force(true);
+            }
+            Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporaryPath);
+            throw e;
+        }
+    }
+}
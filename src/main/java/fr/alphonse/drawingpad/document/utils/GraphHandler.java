@@ -1,17 +1,17 @@
 package fr.alphonse.drawingpad.document.utils;
 
+import fr.alphonse.drawingpad.data.ChangeTracker;
 import fr.alphonse.drawingpad.data.Drawing;
 import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.PositionTable;
 import fr.alphonse.drawingpad.data.geometry.Position;
 import fr.alphonse.drawingpad.data.geometry.Vector;
 import fr.alphonse.drawingpad.data.model.Object;
 import fr.alphonse.drawingpad.data.model.*;
+import fr.alphonse.drawingpad.data.model.value.Value;
 import lombok.experimental.UtilityClass;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -19,11 +19,16 @@ import java.util.stream.Collectors;
 public class GraphHandler {
 
     public static Drawing makeEmptyModel() {
+        var changeTracker = new ChangeTracker();
         return Drawing.builder()
                 .elements(new ArrayList<>())
-                .positions(new HashMap<>())
-                .namePositions(new HashMap<>())
+                .positions(PositionTable.ofPositions(changeTracker))
+                .namePositions(PositionTable.ofVectors(changeTracker))
+                .elementsById(new HashMap<>())
+                .nextId(1)
+                .dependentElements(new HashMap<>())
                 .note("")
+                .changeTracker(changeTracker)
                 .build();
     }
 
@@ -37,43 +42,140 @@ public class GraphHandler {
 
         List<GraphElement> jsonElements = json.getElements();
         List<GraphElement> newElements = ModelStateManager.deepCopy(jsonElements, GraphElement.class);
+        loadElements(newElements, model);
 
-        // resolve references
-        fillVertices(newElements);
-
-        model.setElements(newElements);
-
-        Map<GraphElement, Position> positions = mapKeys(json.getPositions(), id -> findElementWithId(id, newElements));
+        Map<Integer, GraphElement> elementsById = model.getElementsById();
+        Map<GraphElement, Position> positions = mapKeys(json.getPositions(), id -> findElementWithId(id, elementsById));
         model.getPositions().putAll(positions);
 
-        Map<GraphElement, Vector> namePositions = mapKeys(json.getNamePositions(), id -> findElementWithId(id, newElements));
+        Map<GraphElement, Vector> namePositions = mapKeys(json.getNamePositions(), id -> findElementWithId(id, elementsById));
         model.getNamePositions().putAll(namePositions);
 
         model.setNote(json.getNote());
+        model.getChangeTracker().markChanged();
     }
 
-    private static void fillVertices(List<GraphElement> elements) {
+    // the elements are taken as they are, without copy, and replace those of the model
+    public static void loadElements(List<GraphElement> elements, Drawing model) {
+        model.setElements(elements);
+        elements.forEach(model.getChangeTracker()::markChanged);
+        indexElements(model);
+
+        // resolve references
+        fillVertices(elements, model.getElementsById());
+        indexDependencies(model);
+    }
+
+    private static void fillVertices(List<GraphElement> elements, Map<Integer, GraphElement> elementsById) {
         for (GraphElement element: elements) {
             switch (element) {
                 case Object ignored -> doNothing();
-                case Completion completion -> completion.setBase(GraphHandler.findElementWithId(completion.getBaseId(), elements));
+                case Completion completion -> completion.setBase(GraphHandler.findElementWithId(completion.getBaseId(), elementsById));
                 case Link link -> {
-                    link.setOrigin(GraphHandler.findElementWithId(link.getOriginId(), elements));
-                    link.setDestination(GraphHandler.findElementWithId(link.getDestinationId(), elements));
+                    link.setOrigin(GraphHandler.findElementWithId(link.getOriginId(), elementsById));
+                    link.setDestination(GraphHandler.findElementWithId(link.getDestinationId(), elementsById));
                 }
             }
         }
     }
 
-    private static GraphElement findElementWithId(int id, List<GraphElement> elements) {
-        return elements.stream()
-                .filter(element -> element.getId() == id)
-                .findFirst()
-                .orElseThrow();
+    static GraphElement findElementWithId(int id, Map<Integer, GraphElement> elementsById) {
+        GraphElement element = elementsById.get(id);
+        if (element == null) {
+            throw new NoSuchElementException("No element with id " + id);
+        }
+        return element;
     }
 
     public static void doNothing() {}
 
+    private static void indexElements(Drawing model) {
+        model.getElementsById().clear();
+        model.setNextId(1);
+        for (GraphElement element: model.getElements()) {
+            registerId(element, model);
+        }
+    }
+
+    private static void registerId(GraphElement element, Drawing model) {
+        model.getElementsById().put(element.getId(), element);
+        model.setNextId(Math.max(model.getNextId(), element.getId() + 1));
+    }
+
+    private static void indexDependencies(Drawing model) {
+        model.getDependentElements().clear();
+        for (GraphElement element: model.getElements()) {
+            registerDependencies(element, model);
+        }
+    }
+
+    private static void registerDependencies(GraphElement element, Drawing model) {
+        for (GraphElement base: listBases(element)) {
+            model.getDependentElements().computeIfAbsent(base, key -> new ArrayList<>()).add(element);
+        }
+    }
+
+    private static List<GraphElement> listBases(GraphElement element) {
+        return switch (element) {
+            case Object ignored -> List.of();
+            case Completion completion -> List.of(completion.getBase());
+            case Link link -> (link.getOrigin() == link.getDestination()) ? List.of(link.getOrigin()) : List.of(link.getOrigin(), link.getDestination());
+        };
+    }
+
+    public static List<GraphElement> listDirectDependentElements(GraphElement element, Drawing model) {
+        return model.getDependentElements().getOrDefault(element, List.of());
+    }
+
+    public static void addElement(GraphElement element, Drawing model) {
+        model.getElements().add(element);
+        model.getChangeTracker().markChanged(element);
+        registerId(element, model);
+        registerDependencies(element, model);
+    }
+
+    // the elements reference their vertices by id only, and may reference each other
+    public static void restoreElements(List<GraphElement> elements, Drawing model) {
+        for (GraphElement element: elements) {
+            model.getElements().add(element);
+            model.getChangeTracker().markChanged(element);
+            registerId(element, model);
+        }
+        fillVertices(elements, model.getElementsById());
+        for (GraphElement element: elements) {
+            registerDependencies(element, model);
+        }
+    }
+
+    // the element keeps its identity and references, only its attributes change
+    public static void restoreAttributes(GraphElement element, GraphElement savedElement, Drawing model) {
+        element.setName(savedElement.getName());
+        switch (element) {
+            case Object ignored -> doNothing();
+            case Completion completion -> completion.setValue(copyValue(((Completion) savedElement).getValue()));
+            case Link link -> link.setFactor(copyValue(((Link) savedElement).getFactor()));
+        }
+        model.getChangeTracker().markChanged(element);
+    }
+
+    public static void removeElements(Collection<GraphElement> elements, Drawing model) {
+        Set<GraphElement> elementsToRemove = new HashSet<>(elements);
+        model.getElements().removeIf(elementsToRemove::contains);
+        for (GraphElement element: elementsToRemove) {
+            model.getChangeTracker().markChanged(element);
+            model.getElementsById().remove(element.getId(), element);
+            model.getDependentElements().remove(element);
+            for (GraphElement base: listBases(element)) {
+                List<GraphElement> baseDependentElements = model.getDependentElements().get(base);
+                if (baseDependentElements != null) {
+                    baseDependentElements.remove(element);
+                }
+            }
+            model.getPositions().remove(element);
+            model.getNamePositions().remove(element);
+        }
+    }
+
     private static <K1, K2, V> Map<K2,V> mapKeys(Map<K1,V> map, Function<K1, K2> function) {
         return map.keySet().stream()
                 .collect(Collectors.toMap(function, map::get));
@@ -89,18 +191,37 @@ public class GraphHandler {
     }
 
     public static Drawing extractModelWithElements(Drawing model, List<GraphElement> elements) {
-        if (areThereElementsWithoutDependencies(elements)) {
+        Set<GraphElement> elementSet = new HashSet<>(elements);
+        if (areThereElementsWithoutDependencies(elementSet)) {
             return null;
         }
-        return Drawing.builder()
+        var changeTracker = new ChangeTracker();
+        Drawing extractedModel = Drawing.builder()
                 .elements(new ArrayList<>(elements))
-                .positions(model.getPositions().keySet().stream().filter(elements::contains).collect(Collectors.toMap(Function.identity(), model.getPositions()::get)))
-                .namePositions(model.getNamePositions().keySet().stream().filter(elements::contains).collect(Collectors.toMap(Function.identity(), model.getNamePositions()::get)))
+                .positions(PositionTable.ofPositions(changeTracker))
+                .namePositions(PositionTable.ofVectors(changeTracker))
+                .elementsById(new HashMap<>())
+                .dependentElements(new HashMap<>())
                 .note("")
+                .changeTracker(changeTracker)
                 .build();
+        copyPositionsOf(elementSet, model.getPositions(), extractedModel.getPositions());
+        copyPositionsOf(elementSet, model.getNamePositions(), extractedModel.getNamePositions());
+        indexElements(extractedModel);
+        indexDependencies(extractedModel);
+        return extractedModel;
     }
 
-    private boolean areThereElementsWithoutDependencies(List<GraphElement> elements) {
+    private static <V> void copyPositionsOf(Set<GraphElement> elements, Map<GraphElement, V> positions, Map<GraphElement, V> newPositions) {
+        for (GraphElement element: elements) {
+            V position = positions.get(element);
+            if (position != null) {
+                newPositions.put(element, position);
+            }
+        }
+    }
+
+    private boolean areThereElementsWithoutDependencies(Set<GraphElement> elements) {
         return elements.stream().anyMatch(element -> switch (element) {
             case Object ignored -> false;
             case Completion completion -> !elements.contains(completion.getBase());
@@ -108,62 +229,116 @@ public class GraphHandler {
         });
     }
 
-    public static Drawing addModelToModel(Drawing modelToAdd, Drawing model) {
-        Drawing newModelToAdd = copyModel(modelToAdd);
-
-        List<GraphElement> elements = model.getElements();
-        List<GraphElement> elementsToAdd = newModelToAdd.getElements();
+    // the elements are copied with new ids following those of the model, returns the copies
+    public static List<GraphElement> addModelToModel(Drawing modelToAdd, Drawing model) {
+        List<GraphElement> elementsToCopy = modelToAdd.getElements();
+        // nothing is added when the ids run out on the way
+        if (!hasAvailableIds(model, elementsToCopy.size())) {
+            throw new IllegalStateException("No element id left for " + elementsToCopy.size() + " elements");
+        }
+        Map<GraphElement, GraphElement> copiesByElement = new IdentityHashMap<>(elementsToCopy.size());
+        List<GraphElement> newElements = new ArrayList<>(elementsToCopy.size());
+        int id = findAvailableId(model);
+        for (GraphElement element: elementsToCopy) {
+            GraphElement newElement = copyElementAttributes(element, id);
+            id += 1;
+            copiesByElement.put(element, newElement);
+            newElements.add(newElement);
+        }
 
-        changeElementsIdsSoTheyCanBeAdded(elements, elementsToAdd);
+        // the references can only be resolved once every copy exists
+        for (GraphElement element: elementsToCopy) {
+            copyVertexReferences(element, copiesByElement);
+        }
 
-        correctVertexReferences(elementsToAdd);
+        for (GraphElement newElement: newElements) {
+            addElement(newElement, model);
+        }
 
-        elements.addAll(elementsToAdd);
+        copyPositions(modelToAdd.getPositions(), model.getPositions(), copiesByElement);
+        copyPositions(modelToAdd.getNamePositions(), model.getNamePositions(), copiesByElement);
 
-        model.getPositions().putAll(newModelToAdd.getPositions());
-        model.getNamePositions().putAll(newModelToAdd.getNamePositions());
+        return newElements;
+    }
 
-        return newModelToAdd;
+    private static GraphElement copyElementAttributes(GraphElement element, int id) {
+        return switch (element) {
+            case Object ignored -> Object.builder()
+                    .id(id)
+                    .name(element.getName())
+                    .build();
+            case Completion completion -> Completion.builder()
+                    .id(id)
+                    .name(element.getName())
+                    .value(copyValue(completion.getValue()))
+                    .build();
+            case Link link -> Link.builder()
+                    .id(id)
+                    .name(element.getName())
+                    .originLinkDirection(link.getOriginLinkDirection())
+                    .destinationLinkDirection(link.getDestinationLinkDirection())
+                    .factor(copyValue(link.getFactor()))
+                    .build();
+        };
     }
 
-    private static Drawing copyModel(Drawing model) {
-        DrawingJson json = mapModelToJson(model);
-        return mapJsonToModel(json);
+    private static Value copyValue(Value value) {
+        return (value != null) ? value.toBuilder().build() : null;
     }
 
-    private static <T extends GraphElement> void changeElementsIdsSoTheyCanBeAdded(List<T> elements, List<T> elementsToAdd) {
-        int id = findAvailableId(elements);
-        for (T elementToAdd: elementsToAdd) {
-            elementToAdd.setId(id);
-            id += 1;
+    private static void copyVertexReferences(GraphElement element, Map<GraphElement, GraphElement> copiesByElement) {
+        switch (element) {
+            case Object ignored -> doNothing();
+            case Completion completion -> {
+                Completion newCompletion = (Completion) copiesByElement.get(completion);
+                GraphElement newBase = copiesByElement.get(completion.getBase());
+                newCompletion.setBase(newBase);
+                newCompletion.setBaseId(newBase.getId());
+            }
+            case Link link -> {
+                Link newLink = (Link) copiesByElement.get(link);
+                GraphElement newOrigin = copiesByElement.get(link.getOrigin());
+                GraphElement newDestination = copiesByElement.get(link.getDestination());
+                newLink.setOrigin(newOrigin);
+                newLink.setOriginId(newOrigin.getId());
+                newLink.setDestination(newDestination);
+                newLink.setDestinationId(newDestination.getId());
+            }
         }
     }
 
-    public static int findAvailableId(List<? extends GraphElement> elements) {
-        int maxId = elements.stream()
-                .mapToInt(GraphElement::getId)
-                .max()
-                .orElse(0);
-        return 1 + maxId;
+    // the positions are immutable, so they can be shared
+    private static <V> void copyPositions(Map<GraphElement, V> positions, Map<GraphElement, V> newPositions, Map<GraphElement, GraphElement> copiesByElement) {
+        for (Map.Entry<GraphElement, V> entry: positions.entrySet()) {
+            newPositions.put(copiesByElement.get(entry.getKey()), entry.getValue());
+        }
     }
 
-    private static void correctVertexReferences(List<GraphElement> elements) {
-        for (GraphElement element: elements) {
-            switch (element) {
-                case Object ignored -> doNothing();
-                case Completion completion -> completion.setBaseId(completion.getBase().getId());
-                case Link link -> {
-                    link.setOriginId(link.getOrigin().getId());
-                    link.setDestinationId(link.getDestination().getId());
-                }
-            }
+    public static int findAvailableId(Drawing model) {
+        if (!hasAvailableIds(model, 1)) {
+            throw new IllegalStateException("No element id left");
         }
+        return model.getNextId();
+    }
+
+    // the ids are never reused, so that the history and the journal can tell the removed elements from the new ones
+    public static boolean hasAvailableIds(Drawing model, int count) {
+        return (long) model.getNextId() + count - 1 <= Drawing.MAX_ID;
+    }
+
+    public static Set<GraphElement> collectChangedElements(Drawing model) {
+        return model.getChangeTracker().collectChanges();
     }
 
     public void clearModel(Drawing drawing) {
+        drawing.getElements().forEach(drawing.getChangeTracker()::markChanged);
         drawing.getElements().clear();
         drawing.getPositions().clear();
         drawing.getNamePositions().clear();
+        drawing.getElementsById().clear();
+        drawing.setNextId(1);
+        drawing.getDependentElements().clear();
         drawing.setNote("");
+        drawing.getChangeTracker().markChanged();
     }
 }
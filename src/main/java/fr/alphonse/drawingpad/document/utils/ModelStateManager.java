@@ -3,8 +3,11 @@ package fr.alphonse.drawingpad.document.utils;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.experimental.UtilityClass;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +19,32 @@ public class ModelStateManager {
 
     private static final List<Class<?>> VALUE_CLASSES = List.of(Number.class, String.class, Enum.class);
 
+    private static final ClassValue<Boolean> VALUE_TYPES = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isRecord() || VALUE_CLASSES.stream().anyMatch(valueClass -> valueClass.isAssignableFrom(type));
+        }
+    };
+
+    // the reflection is done once per class, the copies and comparisons then go through method handles
+    private static final ClassValue<ClassPlan> CLASS_PLANS = new ClassValue<>() {
+        @Override
+        protected ClassPlan computeValue(Class<?> type) {
+            return makeClassPlan(type);
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    // the constructor is null for the types without a no-arg constructor
+    private record ClassPlan(MethodHandle constructor, List<FieldPlan> fields) {}
+
+    private record FieldPlan(MethodHandle getter, MethodHandle setter) {}
+
     public static boolean areDeepEqual(Object model1, Object model2) {
 
         if (isNull(model1) && isNull(model2)) {
@@ -82,25 +111,12 @@ public class ModelStateManager {
 
     private static boolean areDeepEqualWithFields(Object model1, Object model2) {
 
-        Class<?> currentClass = model1.getClass();
-
-        while (currentClass != null) {
-
-            Field[] fields = currentClass.getDeclaredFields();
-            for (Field field: fields) {
-
-                if (isFieldOutsideState(field)) {
-                    continue;
-                }
-
-                Object fieldValue1 = readField(field, model1);
-                Object fieldValue2 = readField(field, model2);
-                if (!areDeepEqual(fieldValue1, fieldValue2)) {
-                    return false;
-                }
+        for (FieldPlan field: CLASS_PLANS.get(model1.getClass()).fields()) {
+            Object fieldValue1 = readField(field, model1);
+            Object fieldValue2 = readField(field, model2);
+            if (!areDeepEqual(fieldValue1, fieldValue2)) {
+                return false;
             }
-
-            currentClass = currentClass.getSuperclass();
         }
 
         return true;
@@ -113,6 +129,10 @@ public class ModelStateManager {
                 .collect(Collectors.toCollection(ArrayList::new));
     }
 
+    public static <T> T deepCopy(T model, Class<T> type) {
+        return type.cast(copyModel(model));
+    }
+
     private static Object copyModel(Object model) {
 
         if (model == null) {
@@ -133,64 +153,83 @@ public class ModelStateManager {
     }
 
     private static boolean isTypeValue(Class<?> type) {
-        if (type.isRecord()) {
-            return true;
-        }
-        return VALUE_CLASSES.stream().anyMatch(valueClass -> valueClass.isAssignableFrom(type));
+        return VALUE_TYPES.get(type);
     }
 
-    private static Object readField(Field field, Object model) {
+    private static ClassPlan makeClassPlan(Class<?> type) {
         try {
-            field.setAccessible(true);
-            return field.get(model);
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            List<FieldPlan> fields = new ArrayList<>();
+            for (Class<?> currentClass = type ; currentClass != null ; currentClass = currentClass.getSuperclass()) {
+                for (Field field: currentClass.getDeclaredFields()) {
+                    if (isFieldOutsideState(field)) {
+                        continue;
+                    }
+                    MethodHandles.Lookup fieldLookup = MethodHandles.privateLookupIn(currentClass, MethodHandles.lookup());
+                    MethodHandle getter = fieldLookup.unreflectGetter(field).asType(GETTER_TYPE);
+                    MethodHandle setter = fieldLookup.unreflectSetter(field).asType(SETTER_TYPE);
+                    fields.add(new FieldPlan(getter, setter));
+                }
+            }
+            return new ClassPlan(findConstructor(type, lookup), List.copyOf(fields));
         } catch (IllegalAccessException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static Object copyModelWithFields(Object model) {
-
-        Class<?> modelClass = model.getClass();
-        Object newModel = makeNewInstance(modelClass);
-
-        Class<?> currentClass = modelClass;
-
-        while (currentClass != null) {
+    private static MethodHandle findConstructor(Class<?> type, MethodHandles.Lookup lookup) throws IllegalAccessException {
+        if (Modifier.isAbstract(type.getModifiers())) {
+            return null;
+        }
+        try {
+            return lookup.findConstructor(type, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
 
-            Field[] fields = currentClass.getDeclaredFields();
-            for (Field field: fields) {
+    private static Object readField(FieldPlan field, Object model) {
+        try {
+            return (Object) field.getter().invokeExact(model);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-                if (isFieldOutsideState(field)) {
-                    continue;
-                }
+    private static Object copyModelWithFields(Object model) {
 
-                Object fieldValue = readField(field, model);
-                Object newFieldValue = copyModel(fieldValue);
-                changeFieldValue(newModel, field, newFieldValue);
-            }
+        ClassPlan classPlan = CLASS_PLANS.get(model.getClass());
+        Object newModel = makeNewInstance(classPlan, model.getClass());
 
-            currentClass = currentClass.getSuperclass();
+        for (FieldPlan field: classPlan.fields()) {
+            Object fieldValue = readField(field, model);
+            Object newFieldValue = copyModel(fieldValue);
+            changeFieldValue(newModel, field, newFieldValue);
         }
 
         return newModel;
     }
 
-    private static Object makeNewInstance(Class<?> modelClass) {
+    private static Object makeNewInstance(ClassPlan classPlan, Class<?> modelClass) {
+        if (classPlan.constructor() == null) {
+            throw new IllegalArgumentException("No public constructor without arguments in " + modelClass);
+        }
         try {
-            return modelClass.getConstructor().newInstance();
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            return (Object) classPlan.constructor().invokeExact();
+        } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
 
+    // the static fields are not part of the state either
     private static boolean isFieldOutsideState(Field field) {
-        return field.getAnnotation(JsonIgnore.class) != null;
+        return field.getAnnotation(JsonIgnore.class) != null || Modifier.isStatic(field.getModifiers());
     }
 
-    private static void changeFieldValue(Object newModel, Field field, Object newFieldValue) {
+    private static void changeFieldValue(Object newModel, FieldPlan field, Object newFieldValue) {
         try {
-            field.set(newModel, newFieldValue);
-        } catch (IllegalAccessException e) {
+            field.setter().invokeExact(newModel, newFieldValue);
+        } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
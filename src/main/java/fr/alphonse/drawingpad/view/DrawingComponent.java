@@ -1,5 +1,6 @@
 package fr.alphonse.drawingpad.view;
 
+import fr.alphonse.drawingpad.data.ChangeTracker;
 import fr.alphonse.drawingpad.data.Drawing;
 import fr.alphonse.drawingpad.data.geometry.Position;
 import fr.alphonse.drawingpad.data.geometry.Rectangle;
@@ -12,39 +13,57 @@ import fr.alphonse.drawingpad.document.utils.ChangeDetector;
 import fr.alphonse.drawingpad.document.utils.Graduations;
 import fr.alphonse.drawingpad.document.utils.GraphHandler;
 import fr.alphonse.drawingpad.view.internal.GeometryManager;
+import fr.alphonse.drawingpad.view.internal.LinkGeometry;
+import fr.alphonse.drawingpad.view.internal.LinkVectorIndex;
+import fr.alphonse.drawingpad.view.internal.MagneticGuides;
 import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import fr.alphonse.drawingpad.view.internal.RectangleSelectionManager;
+import fr.alphonse.drawingpad.view.internal.Selection;
+import fr.alphonse.drawingpad.view.internal.SpatialIndex;
 import fr.alphonse.drawingpad.view.internal.linkresize.LinkResizeManager;
 import fr.alphonse.drawingpad.view.internal.linkresize.LinkResizeModification;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.util.List;
 import java.util.*;
-import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class DrawingComponent extends JComponent {
 
     private final Drawing model;
 
-    private final ChangeDetector<?,?> changeDetector;
+    private final ChangeDetector<?, Set<GraphElement>> changeDetector;
 
     private final GeometryManager geometryManager;
 
     private final LinkResizeManager linkResizeManager;
 
-    private final List<GraphElement> selectedElements = new ArrayList<>();
+    private final RectangleSelectionManager rectangleSelectionManager;
 
-    public static final Function<List<GraphElement>, ?> SELECTION_STATE_FUNCTION = elements -> elements.stream().map(GraphElement::getId).collect(Collectors.toSet());
+    private final LinkVectorIndex linkVectorIndex;
 
-    private final ChangeDetector<List<GraphElement>,?> selectionChangeDetector = new ChangeDetector<>(selectedElements, SELECTION_STATE_FUNCTION);
+    private final Selection selectedElements = new Selection();
+
+    private final ChangeDetector<Selection, Long> selectionChangeDetector = ChangeDetector.comparingStates(selectedElements, Selection::getVersion);
 
     private Position clickPosition;
 
-    private Map<GraphElement, Vector> dragRelativeVectors;
+    // the elements moved by the drag, shifted at display time by the offset of the geometry manager until the release
+    private Set<GraphElement> draggedElements;
+
+    // the dragged elements and the elements whose drawing depends on them, in display order
+    private List<GraphElement> dragRepaintedElements;
+
+    private Set<GraphElement> dragRepaintedElementSet;
+
+    // the drawing without the dragged elements, rendered once per drag
+    private BufferedImage dragStaticLayer;
+
+    private MagneticGuides dragMagneticGuides;
 
     private boolean hasDragged = false;
 
@@ -60,6 +79,8 @@ public class DrawingComponent extends JComponent {
 
     private Position newLinkCenter = null;
 
+    private Rectangle newLinkBounds = null;
+
     private Graduation newLinkGraduation;
 
     private boolean mustLinkBeAligned = false;
@@ -82,6 +103,14 @@ public class DrawingComponent extends JComponent {
 
     private FontMetrics nameFontMetrics;
 
+    // the rectangles of the names, clickable margin included
+    private final SpatialIndex nameIndex = new SpatialIndex();
+
+    // the index is filled at the first paint, then updated with the changed elements only
+    private boolean isNameIndexFilled = false;
+
+    private final ChangeTracker.ChangeLog nameChangeLog;
+
     private static final int OBJECT_RECTANGLE_RADIUS = 8;
 
     private static final float ARROW_DISTANCE = 28;
@@ -114,8 +143,6 @@ public class DrawingComponent extends JComponent {
 
     private static final Color SELECTION_COLOR = Color.getHSBColor(206f/360, 1f, .9f);
 
-    private static final int GUIDE_MAGNETISM_RADIUS = 3;
-
     private static final int INITIAL_DISTANCE_FROM_BASE = 30;
 
     private static final  Vector PASTE_SHIFT = new Vector(70, 30);
@@ -124,12 +151,17 @@ public class DrawingComponent extends JComponent {
 
     private static final int NAME_MARGIN = 3;
 
-    public DrawingComponent(Drawing model, ChangeDetector<?,?> changeDetector) {
+    private static final int NEW_LINK_MARGIN = 40;
+
+    public DrawingComponent(Drawing model, ChangeDetector<?, Set<GraphElement>> changeDetector) {
         super();
         this.model = model;
         this.changeDetector = changeDetector;
         this.geometryManager = new GeometryManager(model);
         this.linkResizeManager = new LinkResizeManager(model, changeDetector);
+        this.rectangleSelectionManager = new RectangleSelectionManager(model, geometryManager);
+        this.linkVectorIndex = new LinkVectorIndex(model);
+        this.nameChangeLog = model.getChangeTracker().openChangeLog();
         changeDetector.addListener(this, DrawingComponent::reactToModelChange);
         setBackground(Color.WHITE);
         addMouseListener(new MouseListener() {
@@ -195,26 +227,29 @@ public class DrawingComponent extends JComponent {
         return selectionChangeDetector;
     }
 
-    private void reactToModelChange() {
+    private void reactToModelChange(Set<GraphElement> changedElements) {
         // elements of the selection may have disappeared
-        int selectionSizeBeforeFilter = this.selectedElements.size();
-        this.selectedElements.removeIf(element -> !model.getElements().contains(element));
-        if (this.selectedElements.size() != selectionSizeBeforeFilter) {
+        boolean isSelectionChanged = this.selectedElements.removeIf(element -> changedElements.contains(element) && !isInModel(element));
+        if (isSelectionChanged) {
             this.selectionChangeDetector.notifyChange();
         }
 
+        this.dragStaticLayer = null;
         this.repaint();
     }
 
+    private boolean isInModel(GraphElement element) {
+        return model.getElementsById().get(element.getId()) == element;
+    }
+
     public void delete() {
-        for (GraphElement selectedElement: selectedElements) {
-            ModelHandler.deleteElement(selectedElement, model);
-        }
-        this.selectedElements.clear();
-        this.selectionChangeDetector.notifyChange();
-        lastSelectedElement = null;
-        this.changeDetector.notifyChangeCausedBy(this);
-        repaint();
+        repaintElements(listElementsMovedWith(selectedElements));
+        this.changeDetector.runTransactionCausedBy(this, () -> {
+            ModelHandler.deleteElements(selectedElements, model);
+            this.selectedElements.clear();
+            this.selectionChangeDetector.notifyChange();
+            lastSelectedElement = null;
+        });
     }
 
     @Override
@@ -225,6 +260,19 @@ public class DrawingComponent extends JComponent {
         int translationY = getHeight() / 2;
         g.translate(translationX, translationY);
 
+        Rectangle clip = findClipRectangle(g, translationX, translationY);
+
+        // save metrics
+        if (nameFontMetrics == null) {
+            nameFontMetrics = g.getFontMetrics(NAME_FONT);
+        }
+
+        if (isDragLayerDisplayed()) {
+            paintDragLayers(g, clip, translationX, translationY);
+            g.translate(-translationX, -translationY);
+            return;
+        }
+
         // draw selection rectangle
         if (this.selectionRectangleOrigin != null && this.selectionRectangleDestination != null) {
             g.setColor(Color.LIGHT_GRAY);
@@ -236,21 +284,14 @@ public class DrawingComponent extends JComponent {
         }
 
         // draw names
-        drawNames(g);
+        drawNames(listElementsWithNameIn(clip), g);
 
         // draw guides
-        g.setColor(Color.blue);
-        for (Integer guideX: guidesX) {
-            g.drawLine(guideX, -translationY, guideX, translationY);
-        }
-        for (Integer guideY: guidesY) {
-            g.drawLine(-translationX, guideY, translationX, guideY);
-        }
+        drawGuides(g, translationX, translationY);
 
         // draw elements
-        for (Class<? extends GraphElement> type: GeometryManager.DISPLAYED_ELEMENT_TYPES) {
-            streamElementsOfType(model.getElements(), type)
-                    .forEach(element -> drawElement(element, g));
+        for (GraphElement element: geometryManager.listElementsToDisplayIn(clip)) {
+            drawElement(element, g);
         }
 
         // draw link being dragged
@@ -258,25 +299,179 @@ public class DrawingComponent extends JComponent {
             drawLinkBeingDragged(g);
         }
 
-        // save metrics
-        if (nameFontMetrics == null) {
-            nameFontMetrics = g.getFontMetrics(NAME_FONT);
+        g.translate(-translationX, -translationY);
+    }
+
+    private boolean isDragLayerDisplayed() {
+        return hasDragged && dragRepaintedElements != null && !dragRepaintedElements.isEmpty();
+    }
+
+    private void paintDragLayers(Graphics g, Rectangle clip, int translationX, int translationY) {
+        if (dragStaticLayer == null) {
+            dragStaticLayer = makeStaticLayer((Graphics2D) g, translationX, translationY);
         }
+        g.drawImage(dragStaticLayer, -translationX, -translationY, getWidth(), getHeight(), null);
+
+        // draw the dragged elements on top of the static layer
+        drawNames(dragRepaintedElements.stream().filter(this::isNameDisplayed).toList(), g);
+        drawGuides(g, translationX, translationY);
+        for (GraphElement element: dragRepaintedElements) {
+            if (geometryManager.findElementBounds(element).intersects(clip)) {
+                drawElement(element, g);
+            }
+        }
+    }
 
-        g.translate(-translationX, -translationY);
+    private BufferedImage makeStaticLayer(Graphics2D componentGraphics, int translationX, int translationY) {
+        // the layer has the resolution of the screen, which may be scaled
+        double scale = componentGraphics.getTransform().getScaleX();
+        int width = Math.max(1, (int) Math.ceil(getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(getHeight() * scale));
+        BufferedImage layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = layer.createGraphics();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, width, height);
+        g.scale(scale, scale);
+        g.setRenderingHints(componentGraphics.getRenderingHints());
+        g.translate(translationX, translationY);
+
+        Rectangle viewport = new Rectangle(-translationX, -translationY, getWidth(), getHeight());
+        List<GraphElement> elementsWithName = listElementsWithNameIn(viewport).stream()
+                .filter(element -> !dragRepaintedElementSet.contains(element))
+                .toList();
+        drawNames(elementsWithName, g);
+        for (GraphElement element: geometryManager.listElementsToDisplayIn(viewport)) {
+            if (!dragRepaintedElementSet.contains(element)) {
+                drawElement(element, g);
+            }
+        }
+        g.dispose();
+        return layer;
+    }
+
+    private Rectangle findClipRectangle(Graphics g, int translationX, int translationY) {
+        java.awt.Rectangle clipBounds = g.getClipBounds();
+        if (clipBounds == null) {
+            return new Rectangle(-translationX, -translationY, getWidth(), getHeight());
+        }
+        return new Rectangle(clipBounds.x, clipBounds.y, clipBounds.width, clipBounds.height);
     }
 
-    private void drawNames(Graphics g) {
+    private void drawNames(Collection<GraphElement> elements, Graphics g) {
         g.setColor(Color.BLACK);
         g.setFont(NAME_FONT);
-        for (GraphElement element: model.getNamePositions().keySet()) {
-            String name = element.getName();
-            if (name == null || name.isEmpty()) {
-                continue;
-            }
+        for (GraphElement element: elements) {
             Position namePosition = computeNamePositionOfElement(element);
-            g.drawString(name, namePosition.x(), namePosition.y());
+            g.drawString(element.getName(), namePosition.x(), namePosition.y());
+        }
+    }
+
+    private boolean isNameDisplayed(GraphElement element) {
+        String name = element.getName();
+        return name != null && !name.isEmpty() && model.getNamePositions().get(element) != null;
+    }
+
+    private void drawGuides(Graphics g, int translationX, int translationY) {
+        g.setColor(Color.blue);
+        for (Integer guideX: guidesX) {
+            g.drawLine(guideX, -translationY, guideX, translationY);
+        }
+        for (Integer guideY: guidesY) {
+            g.drawLine(-translationX, guideY, translationX, guideY);
+        }
+    }
+
+    private Collection<GraphElement> listElementsWithNameIn(Rectangle clip) {
+        if (nameFontMetrics == null) {
+            return model.getNamePositions().keySet().stream()
+                    .filter(this::isNameDisplayed)
+                    .toList();
+        }
+        return findNameIndex().listElementsInRectangle(clip);
+    }
+
+    // the font metrics must be known
+    private SpatialIndex findNameIndex() {
+        if (!isNameIndexFilled) {
+            nameChangeLog.collectChanges();
+            nameIndex.clear();
+            model.getNamePositions().keySet().forEach(this::addToNameIndex);
+            isNameIndexFilled = true;
+            return nameIndex;
+        }
+        if (!nameChangeLog.isEmpty()) {
+            // the names move with their elements, which move with the elements they depend on
+            for (GraphElement element: GeometryManager.listElementsFollowing(nameChangeLog.collectChanges(), model)) {
+                nameIndex.remove(element);
+                if (GeometryManager.isInModel(element, model)) {
+                    addToNameIndex(element);
+                }
+            }
+        }
+        return nameIndex;
+    }
+
+    private void addToNameIndex(GraphElement element) {
+        if (!isNameDisplayed(element)) {
+            return;
+        }
+        Rectangle nameRectangle = findRectangleOfNameAtPosition(element.getName(), computeNamePositionOfElement(element));
+        nameIndex.addRectangle(element, nameRectangle.increaseByMargin(NAME_MARGIN));
+    }
+
+    private void repaintElements(Collection<GraphElement> elements) {
+        Rectangle bounds = null;
+        for (GraphElement element: elements) {
+            Rectangle elementBounds = findElementBoundsWithName(element);
+            bounds = (bounds == null) ? elementBounds : bounds.union(elementBounds);
         }
+        repaintRectangle(bounds);
+    }
+
+    private Rectangle findElementBoundsWithName(GraphElement element) {
+        Rectangle bounds = geometryManager.findElementBounds(element);
+        if (nameFontMetrics == null || !isNameDisplayed(element)) {
+            return bounds;
+        }
+        Rectangle nameBounds = findRectangleOfNameAtPosition(element.getName(), computeNamePositionOfElement(element));
+        return bounds.union(nameBounds.increaseByMargin(NAME_MARGIN));
+    }
+
+    private void repaintRectangle(Rectangle rectangle) {
+        if (rectangle == null) {
+            return;
+        }
+        repaint(rectangle.x() + getWidth() / 2, rectangle.y() + getHeight() / 2, rectangle.width() + 1, rectangle.height() + 1);
+    }
+
+    private void repaintGuides() {
+        for (Integer guideX: guidesX) {
+            repaint(guideX + getWidth() / 2 - 1, 0, 3, getHeight());
+        }
+        for (Integer guideY: guidesY) {
+            repaint(0, guideY + getHeight() / 2 - 1, getWidth(), 3);
+        }
+    }
+
+    private void repaintSelectionRectangle() {
+        if (selectionRectangleOrigin != null && selectionRectangleDestination != null) {
+            repaintRectangle(Rectangle.between(selectionRectangleOrigin, selectionRectangleDestination));
+        }
+    }
+
+    private void repaintNewLink() {
+        repaintRectangle(newLinkBounds);
+        if (newLinkOrigin == null) {
+            newLinkBounds = null;
+            return;
+        }
+        // the destination can be shifted by magnetism
+        Position originPosition = geometryManager.findVertexPosition(newLinkOrigin, newOriginLinkDirection);
+        newLinkBounds = Rectangle.between(originPosition, findMousePosition()).increaseByMargin(NEW_LINK_MARGIN);
+        if (newLinkCenter != null) {
+            newLinkBounds = newLinkBounds.union(Rectangle.between(newLinkCenter, newLinkCenter));
+        }
+        repaintRectangle(newLinkBounds);
     }
 
     private Position computeNamePositionOfElement(GraphElement element) {
@@ -285,12 +480,6 @@ public class DrawingComponent extends JComponent {
         return elementPosition.translate(nameRelativePosition);
     }
 
-    private static <T extends GraphElement> Stream<T> streamElementsOfType(List<GraphElement> elements, Class<T> type) {
-        return elements.stream()
-                .filter(type::isInstance)
-                .map(type::cast);
-    }
-
     private void drawElement(GraphElement element, Graphics g) {
         switch (element) {
             case Object object -> drawObject(object, g);
@@ -301,7 +490,7 @@ public class DrawingComponent extends JComponent {
 
 
     private void drawObject(Object object, Graphics g) {
-        var position = model.getPositions().get(object);
+        var position = geometryManager.findStoredPosition(object);
 
         g.setColor(Color.GRAY);
         ((Graphics2D) g).setStroke(SHADOW_STROKE);
@@ -318,7 +507,7 @@ public class DrawingComponent extends JComponent {
     }
 
     private void drawCompletion(Completion completion, Graphics g) {
-        var position = model.getPositions().get(completion);
+        var position = geometryManager.findStoredPosition(completion);
 
         if (selectedElements.contains(completion)) {
             g.setColor(SELECTION_COLOR);
@@ -341,11 +530,12 @@ public class DrawingComponent extends JComponent {
     }
 
     private void drawLink(Link link, Graphics g) {
-        var position1 = geometryManager.findVertexPosition(link.getOrigin(), link.getOriginLinkDirection());
-        var position2 = geometryManager.findVertexPosition(link.getDestination(), link.getDestinationLinkDirection());
+        LinkGeometry linkGeometry = geometryManager.findLinkGeometry(link);
+        var position1 = linkGeometry.originPosition();
+        var position2 = linkGeometry.destinationPosition();
         var center = findLinkCenter(link);
-        var linePosition1 = geometryManager.computeArrowMeetingPositionWithElement(center != null ? center : position2, position1, link.getOrigin());
-        var linePosition2 = geometryManager.computeArrowMeetingPositionWithElement(center != null ? center : position1, position2, link.getDestination());
+        var linePosition1 = linkGeometry.originMeetingPosition();
+        var linePosition2 = linkGeometry.destinationMeetingPosition();
         boolean isSelected = selectedElements.contains(link);
         drawLinkBetweenPositions(linePosition1, center, linePosition2, g, isSelected);
         if (Graduations.isStrictlyGreaterThanOne(link.getFactor().getGraduation())) {
@@ -421,35 +611,15 @@ public class DrawingComponent extends JComponent {
     }
 
     private Position shiftDestinationForLinkShapeMagnetism(Position source, Position destination) {
-        List<Vector> linkVectors = model.getElements().stream()
-                .filter(Link.class::isInstance)
-                .map(Link.class::cast)
-                .map(this::computeLinkVectorIfChosenByUser)
-                .filter(Objects::nonNull)
-                .toList();
         Vector draggedVector = Vector.between(source, destination);
-        Vector magnetismShift = linkVectors.stream()
-                .flatMap(vector -> Stream.of(Vector.between(draggedVector, vector), Vector.between(draggedVector, new Vector(-vector.x(), vector.y()))))
-                .filter(vector -> vector.length() < 30)
-                .min(Comparator.comparing(Vector::length))
-                .orElse(null);
-        if (magnetismShift == null) {
+        Vector linkVector = linkVectorIndex.findNearestLinkVector(draggedVector);
+        if (linkVector == null) {
             return destination;
         }
+        Vector magnetismShift = Vector.between(draggedVector, linkVector);
         return destination.translate(magnetismShift);
     }
 
-    private Vector computeLinkVectorIfChosenByUser(Link link) {
-        GraphElement origin = link.getOrigin();
-        GraphElement destination = link.getDestination();
-        Position position1 = model.getPositions().get(origin);
-        Position position2 = model.getPositions().get(destination);
-        if (position1 == null || position2 == null) {
-            return null;
-        }
-        return Vector.between(position1, position2);
-    }
-
     private void reactToClick(MouseEvent event) {
         requestFocusInWindow();
         Position position = findEventPosition(event);
@@ -457,9 +627,12 @@ public class DrawingComponent extends JComponent {
         var clickedElement = geometryManager.findElementAtPosition(position);
         // if drawing a link
         if (this.newLinkOrigin != null) {
-            this.repaint();
             if (clickedElement == null) {
                 if (isCommandPressedDuringEvent(event)) {
+                    // the new object and the link
+                    if (!canAddElements(2)) {
+                        return;
+                    }
                     Position magneticPosition;
                     Position originPosition = geometryManager.findElementPosition(this.newLinkOrigin);
                     if (isShiftKeyPressed(event)) {
@@ -472,6 +645,7 @@ public class DrawingComponent extends JComponent {
                 }
                 else {
                     this.newLinkCenter = position;
+                    repaintNewLink();
                     return;
                 }
             }
@@ -483,38 +657,43 @@ public class DrawingComponent extends JComponent {
             this.newOriginLinkDirection = null;
             this.newLinkCenter = null;
             this.newLinkGraduation = null;
-            this.repaint();
-            if (clickedElement == origin) {
+            repaintNewLink();
+            if (clickedElement == origin || !canAddElements(1)) {
                 return;
             }
             LinkDirection destinationLinkDirection = geometryManager.findLinkDirectionAtPosition(clickedElement, position);
-            ModelHandler.addLink(origin, originLinkDirection, clickedElement, destinationLinkDirection, center, graduation, model);
+            Link link = ModelHandler.addLink(origin, originLinkDirection, clickedElement, destinationLinkDirection, center, graduation, model);
             changeDetector.notifyChangeCausedBy(this);
+            repaintElements(List.of(link, clickedElement));
             return;
         }
         // if press with command, add object or link
         if (isCommandPressedDuringEvent(event)) {
             if (clickedElement == null) {
-                ModelHandler.addObject(position, model);
+                if (!canAddElements(1)) {
+                    return;
+                }
+                Object object = ModelHandler.addObject(position, model);
                 changeDetector.notifyChangeCausedBy(this);
-                repaint();
+                repaintElements(List.of(object));
             }
             else {
                 newLinkOrigin = clickedElement;
                 newOriginLinkDirection = geometryManager.findLinkDirectionAtPosition(clickedElement, position);
                 newLinkGraduation = isOptionKeyPressedDuringEvent(event) ? Graduation.ONE : Graduation.GREATER;
+                repaintNewLink();
             }
             return;
         }
         // if press with control, add completion
         if (isControlPressed(event) && !isShiftKeyPressed(event)) {
-            if (clickedElement == null) {
+            if (clickedElement == null || !canAddElements(1)) {
                 return;
             }
             Position newPosition = makePositionFromBase(geometryManager.findElementPosition(clickedElement));
-            ModelHandler.addCompletion(clickedElement, newPosition, model);
+            Completion completion = ModelHandler.addCompletion(clickedElement, newPosition, model);
             changeDetector.notifyChangeCausedBy(this);
-            repaint();
+            repaintElements(List.of(completion));
             return;
         }
         boolean isShiftKeyPressed = isShiftKeyPressed(event);
@@ -532,8 +711,10 @@ public class DrawingComponent extends JComponent {
         this.lastSelectedElement = clickedElement;
         if (clickedElement == null && !isShiftKeyPressed) {
             this.selectionRectangleOrigin = position;
+            this.rectangleSelectionManager.startSelection();
         }
         boolean alreadySelected = clickedElement != null && selectedElements.contains(clickedElement);
+        repaintElements(selectedElements);
         boolean selectionDidChange = false;
         if (alreadySelected && isShiftKeyPressed) {
             selectedElements.remove(clickedElement);
@@ -549,14 +730,17 @@ public class DrawingComponent extends JComponent {
         }
         if (selectionDidChange) {
             this.selectionChangeDetector.notifyChange();
+            repaintElements(selectedElements);
         }
         hasDragged = false;
         var canDrag = !(isShiftKeyPressed && (clickedElement == null || alreadySelected));
         if (canDrag) {
-            this.dragRelativeVectors = listElementsToDragAmong(this.selectedElements).stream()
-                .collect(Collectors.toMap(Function.identity(), element -> Vector.between(position, geometryManager.findElementPosition(element))));
+            this.draggedElements = new HashSet<>(listElementsToDragAmong(this.selectedElements));
+            this.dragRepaintedElements = listElementsMovedWith(this.selectedElements);
+            this.dragRepaintedElements.sort(GeometryManager.DISPLAY_ORDER);
+            this.dragRepaintedElementSet = new HashSet<>(this.dragRepaintedElements);
+            geometryManager.startDrag(draggedElements, dragRepaintedElementSet);
         }
-        this.repaint();
     }
 
     private static boolean isControlPressed(MouseEvent event) {
@@ -584,11 +768,12 @@ public class DrawingComponent extends JComponent {
     }
 
     private GraphElement findElementWhoseNameContainsPosition(Position position) {
-        for (GraphElement element: model.getNamePositions().keySet()) {
+        if (nameFontMetrics == null) {
+            return null;
+        }
+        // only the names registered in the cell of the position can contain it
+        for (GraphElement element: findNameIndex().listElementsNear(position)) {
             String name = element.getName();
-            if (name == null || name.isEmpty()) {
-                continue;
-            }
             Position namePosition = computeNamePositionOfElement(element);
             Rectangle titleRectangle = findRectangleOfNameAtPosition(name, namePosition);
             Rectangle clickableTitleRectangle = titleRectangle.increaseByMargin(NAME_MARGIN);
@@ -607,13 +792,19 @@ public class DrawingComponent extends JComponent {
     }
 
     private Position findLinkCenter(Link link) {
-        return model.getPositions().get(link);
+        return geometryManager.findStoredPosition(link);
     }
 
     private Position makePositionFromBase(Position basePosition) {
         return new Position(basePosition.x() + INITIAL_DISTANCE_FROM_BASE, basePosition.y());
     }
 
+    private List<GraphElement> listElementsMovedWith(List<GraphElement> elements) {
+        var newElements = new ArrayList<>(elements);
+        addDependentElements(newElements);
+        return newElements;
+    }
+
     private List<GraphElement> listElementsToDragAmong(List<GraphElement> elements) {
         var newElements = elements.stream()
                 .filter(element -> model.getPositions().get(element) != null)
@@ -633,21 +824,37 @@ public class DrawingComponent extends JComponent {
             return;
         }
         if (selectionRectangleOrigin != null || selectionRectangleDestination != null) {
+            repaintSelectionRectangle();
             this.selectionRectangleOrigin = null;
             this.selectionRectangleDestination = null;
-            this.repaint();
         }
         if (!this.guidesX.isEmpty() || !this.guidesY.isEmpty()) {
+            repaintGuides();
             this.clearGuides();
-            this.repaint();
         }
         // if several objects are selected, and we click on one of them, it becomes the only selected element on mouse up
         if (!hasDragged && lastSelectedElement != null && this.selectedElements.size() > 1 && !isShiftKeyPressed(event)) {
+            repaintElements(selectedElements);
             this.selectedElements.removeIf(Predicate.not(Predicate.isEqual(lastSelectedElement)));
-            this.repaint();
             this.selectionChangeDetector.notifyChange();
         }
-        this.dragRelativeVectors = null;
+        if (this.dragStaticLayer != null) {
+            // the dragged elements are drawn again among the others
+            this.dragStaticLayer = null;
+            repaintElements(dragRepaintedElements);
+        }
+        if (hasDragged) {
+            // the model only receives the final positions
+            Vector offset = geometryManager.getDragOffset();
+            for (GraphElement element: draggedElements) {
+                model.getPositions().translate(element, offset.x(), offset.y());
+            }
+        }
+        geometryManager.stopDrag();
+        this.draggedElements = null;
+        this.dragRepaintedElements = null;
+        this.dragRepaintedElementSet = null;
+        this.dragMagneticGuides = null;
         if (hasDragged) {
             changeDetector.notifyChangeCausedBy(this);
         }
@@ -659,60 +866,63 @@ public class DrawingComponent extends JComponent {
             return;
         }
         if (this.draggedNameElement != null) {
+            repaintElements(List.of(this.draggedNameElement));
+            repaintGuides();
             Position newNamePosition = position.translate(this.draggedNameRelativePosition);
             Rectangle nameRectangle = findRectangleOfNameAtPosition(this.draggedNameElement.getName(), newNamePosition);
             Position nameCenter = nameRectangle.findCenter();
             Position elementPosition = geometryManager.findElementPosition(this.draggedNameElement);
-            Vector shift = applyMagneticShift(List.of(nameCenter), List.of(elementPosition));
+            Vector shift = applyMagneticShift(List.of(nameCenter), new MagneticGuides(List.of(elementPosition)));
             newNamePosition = newNamePosition.translate(shift);
             Vector newNameRelativePosition = Vector.between(this.draggedNameCenter, newNamePosition);
             this.model.getNamePositions().put(this.draggedNameElement, newNameRelativePosition);
-            this.repaint();
+            repaintElements(List.of(this.draggedNameElement));
+            repaintGuides();
             return;
         }
         if (selectionRectangleOrigin != null) {
+            repaintSelectionRectangle();
             this.selectionRectangleDestination = position;
             Rectangle selectionRectangle = Rectangle.between(selectionRectangleOrigin, selectionRectangleDestination);
-            List<GraphElement> elementsInRectangle = model.getElements().stream()
-                    .filter(element -> !(element instanceof Link))
-                    .filter(object -> selectionRectangle.containsPosition(model.getPositions().get(object)))
-                    .toList();
-            this.selectedElements.clear();
-            this.selectedElements.addAll(elementsInRectangle);
-            addLinksBetweenElements(selectedElements);
-            this.selectionChangeDetector.notifyChange();
-            this.repaint();
+            Set<GraphElement> elementsInRectangle = rectangleSelectionManager.changeRectangle(selectionRectangle);
+            // the selection was emptied when the rectangle started, only the elements that entered or left it change
+            Set<GraphElement> leavingElements = new HashSet<>();
+            boolean selectionDidChange = false;
+            for (GraphElement element: rectangleSelectionManager.listChangedElements()) {
+                if (elementsInRectangle.contains(element)) {
+                    selectionDidChange |= this.selectedElements.add(element);
+                }
+                else {
+                    leavingElements.add(element);
+                }
+            }
+            if (!leavingElements.isEmpty()) {
+                selectionDidChange |= this.selectedElements.removeIf(leavingElements::contains);
+            }
+            if (selectionDidChange) {
+                this.selectionChangeDetector.notifyChange();
+            }
+            repaintSelectionRectangle();
+            repaintElements(rectangleSelectionManager.listChangedElements());
             return;
         }
-        if (dragRelativeVectors != null) {
-            this.hasDragged = !dragRelativeVectors.isEmpty();
-            for (GraphElement selectedElement: dragRelativeVectors.keySet()) {
-                model.getPositions().put(selectedElement, position.translate(this.dragRelativeVectors.get(selectedElement)));
-            }
+        if (draggedElements != null) {
+            this.hasDragged = !draggedElements.isEmpty();
+            repaintElements(dragRepaintedElements);
+            repaintGuides();
+            geometryManager.changeDragOffset(Vector.between(clickPosition, position));
             updateMagneticGuides();
+            repaintElements(dragRepaintedElements);
+            repaintGuides();
         }
-        this.repaint();
-    }
-
-    private void addLinksBetweenElements(List<GraphElement> elements) {
-        int sizeBefore;
-        do {
-            sizeBefore = elements.size();
-            model.getElements().stream()
-                    .filter(Link.class::isInstance).map(Link.class::cast)
-                    .filter(Predicate.not(elements::contains))
-                    .filter(link -> elements.contains(link.getOrigin()) && elements.contains(link.getDestination()))
-                    .forEach(elements::add);
-        } while(elements.size() > sizeBefore);
     }
 
     private void addDependentElements(List<GraphElement> elements) {
-        int size = elements.size();
-        for (int i=0 ; i<size ; i++) {
-            GraphElement element = elements.get(i);
-            List<GraphElement> dependentElements = ModelHandler.listDependentElements(element, model);
-            for (GraphElement dependentElement: dependentElements) {
-                if (!elements.contains(dependentElement)) {
+        Set<GraphElement> addedElements = new HashSet<>(elements);
+        // the added elements are visited in turn, so the dependencies are transitive
+        for (int i=0 ; i<elements.size() ; i++) {
+            for (GraphElement dependentElement: GraphHandler.listDirectDependentElements(elements.get(i), model)) {
+                if (addedElements.add(dependentElement)) {
                     elements.add(dependentElement);
                 }
             }
@@ -720,72 +930,36 @@ public class DrawingComponent extends JComponent {
     }
 
     private void updateMagneticGuides() {
-        List<Position> draggedPositions = dragRelativeVectors.keySet().stream()
+        List<Position> draggedPositions = draggedElements.stream()
                 .filter(element -> !(element instanceof Link))
                 .map(geometryManager::findElementPosition)
                 .toList();
-        List<Position> otherPositions = model.getElements().stream()
-                .filter(element -> !(element instanceof Link))
-                .filter(element -> dragRelativeVectors.get(element) == null)
-                .map(geometryManager::findElementPosition)
-                .toList();
-        Vector shift = applyMagneticShift(draggedPositions, otherPositions);
+        if (dragMagneticGuides == null) {
+            // the other elements don't move during the drag
+            List<Position> otherPositions = model.getElements().stream()
+                    .filter(element -> !(element instanceof Link))
+                    .filter(element -> !draggedElements.contains(element))
+                    .map(geometryManager::findElementPosition)
+                    .toList();
+            dragMagneticGuides = new MagneticGuides(otherPositions);
+        }
+        Vector shift = applyMagneticShift(draggedPositions, dragMagneticGuides);
         if (shift.length() == 0) return;
         applyMagneticShiftToDraggedElements(shift);
     }
 
-    private Vector applyMagneticShift(List<Position> draggedPositions, List<Position> otherPositions) {
+    private Vector applyMagneticShift(List<Position> draggedPositions, MagneticGuides magneticGuides) {
         this.clearGuides();
-        Integer nearbyGuideDeltaX = findPossibleGuideAndComputeDelta(draggedPositions, otherPositions, Position::x);
-        Integer nearbyGuideDeltaY = findPossibleGuideAndComputeDelta(draggedPositions, otherPositions, Position::y);
-        if (nearbyGuideDeltaX == null && nearbyGuideDeltaY == null) {
+        Vector shift = magneticGuides.computeShift(draggedPositions);
+        if (shift == null) {
             return new Vector(0, 0);
         }
-        int deltaX = nearbyGuideDeltaX == null ? 0 : nearbyGuideDeltaX;
-        int deltaY = nearbyGuideDeltaY == null ? 0 : nearbyGuideDeltaY;
-        Vector shift = new Vector(deltaX, deltaY);
-        fillGuides(draggedPositions, shift, otherPositions);
+        magneticGuides.fillGuides(draggedPositions, shift, guidesX, guidesY);
         return shift;
     }
 
-    private Integer findPossibleGuideAndComputeDelta(List<Position> draggedPositions, List<Position> otherPositions, Function<Position, Integer> coordinate) {
-        return draggedPositions.stream()
-                .map(draggedPosition -> findSinglePossibleGuideAndComputeDelta(draggedPosition, otherPositions, coordinate))
-                .filter(Predicate.not(Objects::isNull))
-                .min(Comparator.comparing(Math::abs))
-                .orElse(null);
-    }
-
-    private Integer findSinglePossibleGuideAndComputeDelta(Position draggedPosition, List<Position> otherPositions, Function<Position, Integer> coordinate) {
-
-        Integer draggedCoordinate = coordinate.apply(draggedPosition);
-
-        return otherPositions.stream()
-                .map(position -> coordinate.apply(position) - draggedCoordinate)
-                .filter(delta -> Math.abs(delta) <= GUIDE_MAGNETISM_RADIUS)
-                .min(Comparator.comparing(Math::abs))
-                .orElse(null);
-    }
-
-    private void fillGuides(List<Position> draggedPositions, Vector draggedShift, List<Position> otherPositions) {
-        this.guidesX.addAll(otherPositions.stream()
-                .map(Position::x)
-                .filter(x -> draggedPositions.stream().anyMatch(position -> position.x() + draggedShift.x() == x))
-                .distinct()
-                .toList());
-        this.guidesY.addAll(otherPositions.stream()
-                .map(Position::y)
-                .filter(y -> draggedPositions.stream().anyMatch(position -> position.y() + draggedShift.y() == y))
-                .distinct()
-                .toList());
-    }
-
     private void applyMagneticShiftToDraggedElements(Vector shift) {
-        for (GraphElement selectedElement: dragRelativeVectors.keySet()) {
-            if (!(selectedElement instanceof Link link && model.getPositions().get(link) == null)) {
-                model.getPositions().put(selectedElement, geometryManager.findElementPosition(selectedElement).translate(shift));
-            }
-        }
+        geometryManager.changeDragOffset(geometryManager.getDragOffset().translate(shift));
     }
 
     private void clearGuides() {
@@ -798,7 +972,7 @@ public class DrawingComponent extends JComponent {
         if (newLinkOrigin != null) {
             this.mustLinkBeAligned = isShiftKeyPressed(e);
             this.mustLinkBeAlignedOnLinkDirections = isCommandPressedDuringEvent(e);
-            this.repaint();
+            repaintNewLink();
         }
     }
 
@@ -819,16 +993,18 @@ public class DrawingComponent extends JComponent {
         boolean needsRefresh = false;
         ArrayList<GraphElement> elementsToMove = new ArrayList<>(selectedElements);
         addDependentElements(elementsToMove);
+        // the notification is queued before the repaint, so that the listeners run before the painting and never during it
+        // being notified later is what marks the move as a nudge, which the history merges with the previous ones
+        this.changeDetector.notifyChangeLaterCausedBy(this);
+        repaintElements(elementsToMove);
         for (GraphElement element: elementsToMove) {
-            if (element instanceof Link link && model.getPositions().get(link) == null) {
-                continue;
+            // the links without position follow their ends
+            if (this.model.getPositions().translate(element, delta.x(), delta.y())) {
+                needsRefresh = true;
             }
-            this.model.getPositions().put(element, this.model.getPositions().get(element).translate(delta));
-            needsRefresh = true;
         }
         if (needsRefresh) {
-            this.changeDetector.notifyChangeCausedBy(this);
-            repaint();
+            repaintElements(elementsToMove);
         }
     }
 
@@ -838,7 +1014,7 @@ public class DrawingComponent extends JComponent {
         }
         this.newLinkOrigin = null;
         this.newLinkCenter = null;
-        this.repaint();
+        repaintNewLink();
     }
 
     public void selectAll() {
@@ -849,25 +1025,38 @@ public class DrawingComponent extends JComponent {
     }
 
     public void paste(Drawing drawing) {
-        Drawing pastedModel = GraphHandler.addModelToModel(drawing, this.model);
-        List<GraphElement> newElements = pastedModel.getElements();
-
-        // shift the new elements
-        int shiftCount = computeShiftCount(drawing);
-        Vector shift = PASTE_SHIFT.multiply(shiftCount);
-        for (GraphElement newElement: newElements) {
-            if (newElement instanceof Link link && model.getPositions().get(link) == null) {
-                continue;
-            }
-            Position position = geometryManager.findElementPosition(newElement);
-            model.getPositions().put(newElement, position.translate(shift));
+        if (!canAddElements(drawing.getElements().size())) {
+            return;
         }
+        this.changeDetector.beginTransaction();
+        List<GraphElement> newElements;
+        try {
+            newElements = GraphHandler.addModelToModel(drawing, this.model);
+
+            // shift the new elements, the links without position following their ends
+            int shiftCount = computeShiftCount(drawing);
+            Vector shift = PASTE_SHIFT.multiply(shiftCount);
+            for (GraphElement newElement: newElements) {
+                model.getPositions().translate(newElement, shift.x(), shift.y());
+            }
 
-        this.selectedElements.clear();
-        this.selectedElements.addAll(newElements);
-        this.changeDetector.notifyChangeCausedBy(this);
+            repaintElements(selectedElements);
+            this.selectedElements.clear();
+            this.selectedElements.addAll(newElements);
+        } finally {
+            this.changeDetector.commitTransactionCausedBy(this);
+        }
         this.selectionChangeDetector.notifyChange();
-        repaint();
+        repaintElements(newElements);
+    }
+
+    // a pasted drawing takes ids from 1 again
+    private boolean canAddElements(int count) {
+        if (GraphHandler.hasAvailableIds(model, count)) {
+            return true;
+        }
+        JOptionPane.showMessageDialog(this, "No element can be added: this drawing has used all its element ids.\nCopy its elements into a new drawing to number them again.", "Drawing Full", JOptionPane.ERROR_MESSAGE);
+        return false;
     }
 
     private int computeShiftCount(Drawing pastedModel) {
@@ -887,7 +1076,11 @@ public class DrawingComponent extends JComponent {
         }
         GraphElement element = selectedElements.get(0);
         if (element instanceof Link link) {
-            linkResizeManager.resizeLinks(link, modification);
+            Map<GraphElement, Vector> shifts = linkResizeManager.listObjectShifts(link, modification);
+            List<GraphElement> movedElements = listElementsMovedWith(new ArrayList<>(shifts.keySet()));
+            repaintElements(movedElements);
+            linkResizeManager.resizeLinks(shifts, this);
+            repaintElements(movedElements);
         }
     }
 }
@@ -13,6 +13,7 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.Set;
 import java.util.function.Consumer;
 
 public class InfoComponent extends JPanel {
@@ -21,7 +22,7 @@ public class InfoComponent extends JPanel {
 
     private final Drawing model;
 
-    private final ChangeDetector<?,?> modelChangeDetector;
+    private final ChangeDetector<?, Set<GraphElement>> modelChangeDetector;
 
     private JTextArea noteField;
 
@@ -65,7 +66,7 @@ public class InfoComponent extends JPanel {
 
     private final static Vector LINK_NAME_SHIFT = new Vector(0, -6);
 
-    public InfoComponent(java.util.List<GraphElement> selection, ChangeDetector<?,?> selectionChangeDetector, ChangeDetector<?,?> modelChangeDetector, Drawing model) {
+    public InfoComponent(java.util.List<GraphElement> selection, ChangeDetector<?,?> selectionChangeDetector, ChangeDetector<?, Set<GraphElement>> modelChangeDetector, Drawing model) {
         super();
         this.selection = selection;
         this.modelChangeDetector = modelChangeDetector;
@@ -107,7 +108,7 @@ public class InfoComponent extends JPanel {
 
             @Override
             public void focusLost(FocusEvent e) {
-                InfoComponent.this.model.setNote(textArea.getText());
+                InfoComponent.this.changeNote(textArea.getText());
                 InfoComponent.this.modelChangeDetector.notifyChangeCausedBy(InfoComponent.this);
             }
         });
@@ -156,10 +157,8 @@ public class InfoComponent extends JPanel {
     private JPanel makeObjectSelectionView() {
         JPanel panel = makeInfoPanel();
         this.objectNameField = makeNameField(panel, text -> {if (this.selectedObject != null) {
-            this.selectedObject.setName(text);
-            changeNameVisible(selectedObject, !text.isEmpty());
+            renameElement(this.selectedObject, text);
             objectNameVisibleCheckBox.setSelected(!text.isEmpty());
-            this.modelChangeDetector.notifyChangeCausedBy(InfoComponent.this);
         }});
 
         JCheckBox nameVisibleCheckBox = makeNameVisibleCheckBox(panel);
@@ -221,6 +220,34 @@ public class InfoComponent extends JPanel {
         return checkbox;
     }
 
+    private void changeNote(String note) {
+        if (!note.equals(model.getNote())) {
+            model.setNote(note);
+            model.getChangeTracker().markChanged();
+        }
+    }
+
+    // the name and its visibility make a single change
+    private void renameElement(GraphElement element, String name) {
+        modelChangeDetector.runTransactionCausedBy(InfoComponent.this, () -> {
+            changeName(element, name);
+            changeNameVisible(element, !name.isEmpty());
+        });
+    }
+
+    private void changeName(GraphElement element, String name) {
+        if (!name.equals(element.getName())) {
+            element.setName(name);
+            model.getChangeTracker().markChanged(element);
+        }
+    }
+
+    private void reactToValueChange(GraphElement element) {
+        // the values are modified in place by the component
+        model.getChangeTracker().markChanged(element);
+        modelChangeDetector.notifyChangeCausedBy(InfoComponent.this);
+    }
+
     private void changeNameVisible(GraphElement element, boolean newValue) {
         if (newValue && model.getNamePositions().get(element) == null) {
             Vector shift = switch (element) {
@@ -238,10 +265,8 @@ public class InfoComponent extends JPanel {
     private JPanel makeCompletionSelectionView() {
         JPanel panel = makeInfoPanel();
         this.completionNameField = makeNameField(panel, text -> {if (this.selectedCompletion != null) {
-            this.selectedCompletion.setName(text);
-            changeNameVisible(selectedCompletion, !text.isEmpty());
+            renameElement(this.selectedCompletion, text);
             completionNameVisibleCheckBox.setSelected(!text.isEmpty());
-            this.modelChangeDetector.notifyChangeCausedBy(InfoComponent.this);
         }});
 
         JCheckBox nameVisibleCheckBox = makeNameVisibleCheckBox(panel);
@@ -259,7 +284,7 @@ public class InfoComponent extends JPanel {
         valueLabel.setForeground(Color.WHITE);
         valueLabel.setHorizontalAlignment(SwingConstants.CENTER);
         panel.add(valueLabel);
-        completionValueComponent = new GraduatedValueComponent(() -> modelChangeDetector.notifyChangeCausedBy(InfoComponent.this));
+        completionValueComponent = new GraduatedValueComponent(() -> reactToValueChange(this.selectedCompletion));
         panel.add(completionValueComponent);
 
         return panel;
@@ -269,10 +294,8 @@ public class InfoComponent extends JPanel {
         JPanel panel = makeInfoPanel();
 
         this.linkNameField = makeNameField(panel, text -> {if (this.selectedLink != null) {
-            this.selectedLink.setName(text);
-            changeNameVisible(selectedLink, !text.isEmpty());
+            renameElement(this.selectedLink, text);
             linkNameVisibleCheckBox.setSelected(!text.isEmpty());
-            this.modelChangeDetector.notifyChangeCausedBy(InfoComponent.this);
         }});
 
         JCheckBox nameVisibleCheckBox = makeNameVisibleCheckBox(panel);
@@ -290,7 +313,7 @@ public class InfoComponent extends JPanel {
         factorLabel.setForeground(Color.WHITE);
         factorLabel.setHorizontalAlignment(SwingConstants.CENTER);
         panel.add(factorLabel);
-        linkFactorComponent = new GraduatedValueComponent(() -> modelChangeDetector.notifyChangeCausedBy(InfoComponent.this));
+        linkFactorComponent = new GraduatedValueComponent(() -> reactToValueChange(this.selectedLink));
         panel.add(linkFactorComponent);
 
         panel.add(Box.createVerticalGlue());
@@ -365,9 +388,12 @@ public class InfoComponent extends JPanel {
         linkNameVisibleCheckBox.setSelected(checkIfNameVisible(link));
     }
 
-    private void reactToModelChange() {
-        // we don't need to react to object changes, because they are deselected on undo/redo
-        // But we must update the note if necessary
+    private void reactToModelChange(Set<GraphElement> changedElements) {
+        // undo and redo can modify the selected element
+        if (selection.size() == 1 && changedElements.contains(selection.get(0))) {
+            reactToSelectionChange();
+        }
+        // we must update the note if necessary
         if (!model.getNote().equals(noteField.getText())) {
             noteField.setText(model.getNote());
             noteField.transferFocus();
@@ -1,82 +1,215 @@
 package fr.alphonse.drawingpad.view.internal;
 
+import fr.alphonse.drawingpad.data.ChangeTracker;
 import fr.alphonse.drawingpad.data.Drawing;
 import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Rectangle;
 import fr.alphonse.drawingpad.data.geometry.Vector;
 import fr.alphonse.drawingpad.data.model.Object;
 import fr.alphonse.drawingpad.data.model.*;
 import fr.alphonse.drawingpad.data.model.reference.LinkDirection;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 public class GeometryManager {
 
     private final Drawing model;
 
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+
+    // the index is filled at the first query, then updated with the changed elements only
+    private boolean isSpatialIndexFilled = false;
+
+    private final ChangeTracker.ChangeLog changeLog;
+
+    // the geometries are computed on demand, and dropped when the elements they depend on change
+    private final Map<Link, LinkGeometry> linkGeometries = new HashMap<>();
+
+    // during a drag, the dragged elements are displayed shifted by the offset, the model only being modified at the end
+    private Set<GraphElement> draggedElements = Set.of();
+
+    // the dragged elements and the ones following them, whose link geometries change with the offset
+    private Set<GraphElement> dragMovedElements = Set.of();
+
+    private Vector dragOffset = new Vector(0, 0);
+
+    // the geometries of the moved links, valid for the current offset
+    private final Map<Link, LinkGeometry> draggedLinkGeometries = new HashMap<>();
+
     public static final int OBJECT_RADIUS = 10;
 
     public static final int CIRCLE_RADIUS = 6;
 
+    // large enough to contain the strokes, shadows and arrows around the positions
+    private static final int ELEMENT_MARGIN = 12;
+
     // the element types in the order they are displayed
     public static final List<Class<? extends GraphElement>> DISPLAYED_ELEMENT_TYPES = List.of(Link.class, Completion.class, Object.class);
 
+    public static final Comparator<GraphElement> DISPLAY_ORDER = Comparator.comparing((GraphElement element) -> DISPLAYED_ELEMENT_TYPES.indexOf(element.getClass())).thenComparing(GraphElement::getId);
+
     public GeometryManager(Drawing model) {
         this.model = model;
+        this.changeLog = model.getChangeTracker().openChangeLog();
+    }
+
+    public void startDrag(Set<GraphElement> draggedElements, Set<GraphElement> movedElements) {
+        this.draggedElements = draggedElements;
+        this.dragMovedElements = movedElements;
+        this.dragOffset = new Vector(0, 0);
+        draggedLinkGeometries.clear();
+    }
+
+    public void changeDragOffset(Vector offset) {
+        if (offset.equals(dragOffset)) {
+            return;
+        }
+        dragOffset = offset;
+        draggedLinkGeometries.clear();
+    }
+
+    public Vector getDragOffset() {
+        return dragOffset;
+    }
+
+    public void stopDrag() {
+        draggedElements = Set.of();
+        dragMovedElements = Set.of();
+        dragOffset = new Vector(0, 0);
+        draggedLinkGeometries.clear();
+    }
+
+    // the position in the model, shifted if the element is being dragged
+    public Position findStoredPosition(GraphElement element) {
+        Position position = model.getPositions().get(element);
+        if (position == null || !draggedElements.contains(element)) {
+            return position;
+        }
+        return position.translate(dragOffset);
     }
 
     public Position findElementPosition(GraphElement element) {
         if (element instanceof Link link) {
             return findLinkPosition(link);
         }
-        return model.getPositions().get(element);
+        return findStoredPosition(element);
     }
 
     private Position findLinkPosition(Link link) {
-        Position center = model.getPositions().get(link);
-        if (center != null) {
-            return center;
-        }
-        var position1 = findElementPosition(link.getOrigin());
-        var position2 = findElementPosition(link.getDestination());
-        return Position.middle(position1, position2);
+        return findLinkGeometry(link).position();
     }
 
     public Position findVertexPosition(GraphElement element, LinkDirection linkDirection) {
         if (element instanceof Link link) {
             return findLinkVertexPosition(link, linkDirection);
         }
-        return model.getPositions().get(element);
+        return findStoredPosition(element);
     }
 
     private Position findLinkVertexPosition(Link link, LinkDirection linkDirection) {
+        LinkGeometry linkGeometry = findLinkGeometry(link);
         return switch (linkDirection) {
-            case DIRECT -> {
-                var position1 = findVertexPosition(link.getOrigin(), link.getOriginLinkDirection());
-                var center = model.getPositions().get(link);
-                if (center != null) {
-                    yield Position.middle(position1, center);
-                }
-                var position2 = findVertexPosition(link.getDestination(), link.getDestinationLinkDirection());
-                yield findFirstQuarter(position1, position2);
+            case DIRECT -> linkGeometry.directVertexPosition();
+            case REVERSE -> linkGeometry.reverseVertexPosition();
+        };
+    }
+
+    public LinkGeometry findLinkGeometry(Link link) {
+        applyModelChanges();
+        LinkGeometry linkGeometry = findGeometryCache(link).get(link);
+        if (linkGeometry != null) {
+            return linkGeometry;
+        }
+        // the links a link is attached to are computed before it, without recursion as the chains can be long
+        Deque<Link> linksToCompute = new ArrayDeque<>();
+        linksToCompute.push(link);
+        while (!linksToCompute.isEmpty()) {
+            Link linkToCompute = linksToCompute.peek();
+            if (findGeometryCache(linkToCompute).containsKey(linkToCompute)) {
+                linksToCompute.pop();
+                continue;
             }
-            case REVERSE -> {
-                var position2 = findVertexPosition(link.getDestination(), link.getDestinationLinkDirection());
-                var center = model.getPositions().get(link);
-                if (center != null) {
-                    yield Position.middle(center, position2);
+            boolean areEndsComputed = true;
+            for (GraphElement end: List.of(linkToCompute.getOrigin(), linkToCompute.getDestination())) {
+                if (end instanceof Link endLink && !findGeometryCache(endLink).containsKey(endLink)) {
+                    linksToCompute.push(endLink);
+                    areEndsComputed = false;
                 }
-                var position1 = findVertexPosition(link.getOrigin(), link.getOriginLinkDirection());
-                yield findFirstQuarter(position2, position1);
             }
-        };
+            if (areEndsComputed) {
+                findGeometryCache(linkToCompute).put(linkToCompute, computeLinkGeometry(linkToCompute));
+                linksToCompute.pop();
+            }
+        }
+        return findGeometryCache(link).get(link);
+    }
+
+    // the geometries of the other links don't change during a drag
+    private Map<Link, LinkGeometry> findGeometryCache(Link link) {
+        return dragMovedElements.contains(link) ? draggedLinkGeometries : linkGeometries;
+    }
+
+    // the geometries of the ends must have been computed
+    private LinkGeometry computeLinkGeometry(Link link) {
+        var position1 = findVertexPosition(link.getOrigin(), link.getOriginLinkDirection());
+        var position2 = findVertexPosition(link.getDestination(), link.getDestinationLinkDirection());
+        var center = findStoredPosition(link);
+        if (center != null) {
+            return new LinkGeometry(
+                    center,
+                    position1,
+                    position2,
+                    Position.middle(position1, center),
+                    Position.middle(center, position2),
+                    computeArrowMeetingPositionWithElement(center, position1, link.getOrigin()),
+                    computeArrowMeetingPositionWithElement(center, position2, link.getDestination())
+            );
+        }
+        return new LinkGeometry(
+                Position.middle(findElementPosition(link.getOrigin()), findElementPosition(link.getDestination())),
+                position1,
+                position2,
+                findFirstQuarter(position1, position2),
+                findFirstQuarter(position2, position1),
+                computeArrowMeetingPositionWithElement(position2, position1, link.getOrigin()),
+                computeArrowMeetingPositionWithElement(position1, position2, link.getDestination())
+        );
     }
 
     private static Position findFirstQuarter(Position p1, Position p2) {
         return new Position((p1.x()*3 + p2.x())/4, (p1.y()*3 + p2.y())/4);
     }
 
+    public Rectangle findElementBounds(GraphElement element) {
+        return switch (element) {
+            case Object object -> findPositionBounds(findStoredPosition(object));
+            case Completion completion -> {
+                Position position = findStoredPosition(completion);
+                Position basePosition = findElementPosition(completion.getBase());
+                yield Rectangle.between(position, basePosition).increaseByMargin(ELEMENT_MARGIN);
+            }
+            case Link link -> {
+                LinkGeometry linkGeometry = findLinkGeometry(link);
+                Rectangle endsBounds = Rectangle.between(linkGeometry.originPosition(), linkGeometry.destinationPosition());
+                yield endsBounds.union(findPositionBounds(linkGeometry.position())).increaseByMargin(ELEMENT_MARGIN);
+            }
+        };
+    }
+
+    private static Rectangle findPositionBounds(Position position) {
+        return Rectangle.between(position, position).increaseByMargin(ELEMENT_MARGIN);
+    }
+
     public Position computeArrowMeetingPositionWithElement(Position position1, Position position2, GraphElement element) {
         return switch (element) {
             case Object ignored -> computeArrowMeetingPositionWithObject(position1, position2);
@@ -116,9 +249,10 @@ public class GeometryManager {
     public LinkDirection findLinkDirectionAtPosition(GraphElement element, Position position) {
         if (element instanceof Link link) {
 
-            var position1 = findVertexPosition(link.getOrigin(), link.getOriginLinkDirection());
-            var position2 = findVertexPosition(link.getDestination(), link.getDestinationLinkDirection());
-            var center = findElementPosition(link);
+            LinkGeometry linkGeometry = findLinkGeometry(link);
+            var position1 = linkGeometry.originPosition();
+            var position2 = linkGeometry.destinationPosition();
+            var center = linkGeometry.position();
 
             int distanceFromFirstHalf = findPositionDistanceFromLine(position, position1, center);
             int distanceFromSecondHalf = findPositionDistanceFromLine(position, center, position2);
@@ -134,10 +268,11 @@ public class GeometryManager {
     }
 
     public GraphElement findElementAtPosition(Position position) {
+        List<GraphElement> nearbyElements = findSpatialIndex().listElementsNear(position);
         // we look for an element in the reverse orrder they are drawn
         for (int i=DISPLAYED_ELEMENT_TYPES.size()-1 ; i >= 0 ; i--) {
             Class<? extends GraphElement> elementType = DISPLAYED_ELEMENT_TYPES.get(i);
-            GraphElement element = findElementOfTypeAtPosition(position, elementType);
+            GraphElement element = findElementOfTypeAmong(nearbyElements, position, elementType);
             if (element != null) {
                 return element;
             }
@@ -146,11 +281,109 @@ public class GeometryManager {
     }
 
     public GraphElement findElementOfTypeAtPosition(Position position, Class<? extends GraphElement> type) {
+        List<GraphElement> nearbyElements = findSpatialIndex().listElementsNear(position);
+        return findElementOfTypeAmong(nearbyElements, position, type);
+    }
+
+    public Set<GraphElement> listElementsAroundRectangleChange(Rectangle previousRectangle, Rectangle rectangle) {
+        return findSpatialIndex().listElementsAroundRectangleChange(previousRectangle, rectangle);
+    }
+
+    // returns the elements in the order they are displayed
+    public List<GraphElement> listElementsToDisplayIn(Rectangle rectangle) {
+        List<GraphElement> elements = new ArrayList<>(findSpatialIndex().listElementsInRectangle(rectangle));
+        elements.sort(DISPLAY_ORDER);
+        return elements;
+    }
+
+    private SpatialIndex findSpatialIndex() {
+        if (!isSpatialIndexFilled) {
+            changeLog.collectChanges();
+            fillSpatialIndex();
+            isSpatialIndexFilled = true;
+        }
+        applyModelChanges();
+        return spatialIndex;
+    }
+
+    // the changed elements move in the index with the elements whose geometry depends on them, whose link geometries are dropped
+    private void applyModelChanges() {
+        if (changeLog.isEmpty()) {
+            return;
+        }
+        Set<GraphElement> movedElements = listElementsFollowing(changeLog.collectChanges(), model);
+        for (GraphElement element: movedElements) {
+            if (element instanceof Link link) {
+                linkGeometries.remove(link);
+                draggedLinkGeometries.remove(link);
+            }
+        }
+        if (!isSpatialIndexFilled) {
+            return;
+        }
+        for (GraphElement element: movedElements) {
+            spatialIndex.remove(element);
+            if (isInModel(element, model)) {
+                addToSpatialIndex(element);
+            }
+        }
+    }
+
+    // the elements and their dependent elements, whose geometry follows them
+    public static Set<GraphElement> listElementsFollowing(Set<GraphElement> elements, Drawing model) {
+        Set<GraphElement> followingElements = new HashSet<>(elements);
+        Deque<GraphElement> elementsToVisit = new ArrayDeque<>(elements);
+        while (!elementsToVisit.isEmpty()) {
+            for (GraphElement dependentElement: GraphHandler.listDirectDependentElements(elementsToVisit.pop(), model)) {
+                if (followingElements.add(dependentElement)) {
+                    elementsToVisit.push(dependentElement);
+                }
+            }
+        }
+        return followingElements;
+    }
+
+    // the removed elements remain in the change sets
+    public static boolean isInModel(GraphElement element, Drawing model) {
+        return model.getElementsById().get(element.getId()) == element;
+    }
+
+    private void fillSpatialIndex() {
+        spatialIndex.clear();
+        for (GraphElement element: model.getElements()) {
+            addToSpatialIndex(element);
+        }
+    }
+
+    // the elements are registered with their drawing margin, which contains the hit radius
+    private void addToSpatialIndex(GraphElement element) {
+        switch (element) {
+            case Object object -> spatialIndex.addPoint(object, findStoredPosition(object), ELEMENT_MARGIN);
+            case Completion completion -> spatialIndex.addSegment(completion, findStoredPosition(completion), findElementPosition(completion.getBase()), ELEMENT_MARGIN);
+            case Link link -> addLinkToSpatialIndex(link);
+        }
+    }
+
+    private void addLinkToSpatialIndex(Link link) {
+        LinkGeometry linkGeometry = findLinkGeometry(link);
+        var position1 = linkGeometry.originPosition();
+        var position2 = linkGeometry.destinationPosition();
+        var center = findStoredPosition(link);
+        if (center == null) {
+            spatialIndex.addSegment(link, position1, position2, ELEMENT_MARGIN);
+            return;
+        }
+        spatialIndex.addSegment(link, position1, center, ELEMENT_MARGIN);
+        spatialIndex.addSegment(link, center, position2, ELEMENT_MARGIN);
+    }
+
+    private GraphElement findElementOfTypeAmong(List<GraphElement> elements, Position position, Class<? extends GraphElement> type) {
         Function<GraphElement,Integer> computeDistanceFunction = (element -> computePositionDistanceFromElement(position, element));
-        return model.getElements().stream()
+        return elements.stream()
                 .filter(type::isInstance)
                 .filter(element -> computeDistanceFunction.apply(element) < OBJECT_RADIUS)
-                .min(Comparator.comparing(computeDistanceFunction))
+                // among equally near elements, the oldest one, whatever the order of the elements in the cells
+                .min(Comparator.comparing(computeDistanceFunction).thenComparing(GraphElement::getId))
                 .orElse(null);
     }
 
@@ -159,16 +392,17 @@ public class GeometryManager {
             return findPositionDistanceFromLink(position, link);
         }
 
-        Position elementPosition = model.getPositions().get(element);
+        Position elementPosition = findStoredPosition(element);
         var relativePosition = Vector.between(elementPosition, position);
         return relativePosition.infiniteNormLength();
     }
 
     private int findPositionDistanceFromLink(Position position, Link link) {
 
-        var position1 = findVertexPosition(link.getOrigin(), link.getOriginLinkDirection());
-        var position2 = findVertexPosition(link.getDestination(), link.getDestinationLinkDirection());
-        var center = model.getPositions().get(link);
+        LinkGeometry linkGeometry = findLinkGeometry(link);
+        var position1 = linkGeometry.originPosition();
+        var position2 = linkGeometry.destinationPosition();
+        var center = findStoredPosition(link);
 
         if (center == null) {
             return findPositionDistanceFromLine(position, position1, position2);
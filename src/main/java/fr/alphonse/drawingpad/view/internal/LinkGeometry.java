@@ -0,0 +1,7 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+
+// the resolved positions of a link, the meeting positions being where its line stops at the borders of its ends
+public record LinkGeometry(Position position, Position originPosition, Position destinationPosition, Position directVertexPosition, Position reverseVertexPosition, Position originMeetingPosition, Position destinationMeetingPosition) {
+}
@@ -0,0 +1,149 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.ChangeTracker;
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// the vectors of the existing links and their mirrors, bucketed in a grid whose cells are as large as the magnetism radius
+public class LinkVectorIndex {
+
+    private static final int MAGNETISM_RADIUS = 30;
+
+    private final Drawing model;
+
+    private final Map<Long, List<Vector>> cells = new HashMap<>();
+
+    // the vector indexed for each link, so that it can be replaced when an end moves
+    private final Map<Link, Vector> vectorsByLink = new HashMap<>();
+
+    // the index is filled at the first query, then patched with the links whose ends changed
+    private boolean isFilled = false;
+
+    private final ChangeTracker.ChangeLog changeLog;
+
+    public LinkVectorIndex(Drawing model) {
+        this.model = model;
+        this.changeLog = model.getChangeTracker().openChangeLog();
+    }
+
+    // returns null if no link vector is within the magnetism radius
+    public Vector findNearestLinkVector(Vector vector) {
+        updateIfNecessary();
+        int cellX = findCellCoordinate(vector.x());
+        int cellY = findCellCoordinate(vector.y());
+        Vector nearestVector = null;
+        float nearestDistance = MAGNETISM_RADIUS;
+        for (int x=cellX-1 ; x<=cellX+1 ; x++) {
+            for (int y=cellY-1 ; y<=cellY+1 ; y++) {
+                for (Vector linkVector: cells.getOrDefault(makeCellKey(x, y), List.of())) {
+                    float distance = Vector.between(vector, linkVector).length();
+                    if (distance < nearestDistance) {
+                        nearestDistance = distance;
+                        nearestVector = linkVector;
+                    }
+                }
+            }
+        }
+        return nearestVector;
+    }
+
+    private void updateIfNecessary() {
+        if (!isFilled) {
+            changeLog.collectChanges();
+            for (GraphElement element: model.getElements()) {
+                if (element instanceof Link link) {
+                    addLinkVector(link);
+                }
+            }
+            isFilled = true;
+            return;
+        }
+        if (changeLog.isEmpty()) {
+            return;
+        }
+        for (Link link: listLinksToUpdate(changeLog.collectChanges())) {
+            removeLinkVector(link);
+            if (GeometryManager.isInModel(link, model)) {
+                addLinkVector(link);
+            }
+        }
+    }
+
+    // the changed links, and the links whose end is a changed element
+    private Set<Link> listLinksToUpdate(Set<GraphElement> changedElements) {
+        Set<Link> links = new HashSet<>();
+        for (GraphElement element: changedElements) {
+            if (element instanceof Link link) {
+                links.add(link);
+            }
+            for (GraphElement dependentElement: GraphHandler.listDirectDependentElements(element, model)) {
+                if (dependentElement instanceof Link link && (link.getOrigin() == element || link.getDestination() == element)) {
+                    links.add(link);
+                }
+            }
+        }
+        return links;
+    }
+
+    private void addLinkVector(Link link) {
+        Position position1 = model.getPositions().get(link.getOrigin());
+        Position position2 = model.getPositions().get(link.getDestination());
+        if (position1 == null || position2 == null) {
+            return;
+        }
+        Vector vector = Vector.between(position1, position2);
+        vectorsByLink.put(link, vector);
+        addVector(vector);
+        addVector(findMirror(vector));
+    }
+
+    private void removeLinkVector(Link link) {
+        Vector vector = vectorsByLink.remove(link);
+        if (vector == null) {
+            return;
+        }
+        removeVector(vector);
+        removeVector(findMirror(vector));
+    }
+
+    private static Vector findMirror(Vector vector) {
+        return new Vector(-vector.x(), vector.y());
+    }
+
+    private void addVector(Vector vector) {
+        cells.computeIfAbsent(findCellKey(vector), k -> new ArrayList<>()).add(vector);
+    }
+
+    // the vectors are values, so any equal one can be removed
+    private void removeVector(Vector vector) {
+        long key = findCellKey(vector);
+        List<Vector> cellVectors = cells.get(key);
+        cellVectors.remove(vector);
+        if (cellVectors.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    private static long findCellKey(Vector vector) {
+        return makeCellKey(findCellCoordinate(vector.x()), findCellCoordinate(vector.y()));
+    }
+
+    private static int findCellCoordinate(int coordinate) {
+        return Math.floorDiv(coordinate, MAGNETISM_RADIUS);
+    }
+
+    private static long makeCellKey(int cellX, int cellY) {
+        return ((long)cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,96 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+// the coordinates of the elements that stay still, sorted once so guides are found by binary search
+public class MagneticGuides {
+
+    private static final int MAGNETISM_RADIUS = 3;
+
+    private static final int NO_DELTA = Integer.MAX_VALUE;
+
+    private final int[] sortedXs;
+
+    private final int[] sortedYs;
+
+    public MagneticGuides(Collection<Position> positions) {
+        this.sortedXs = sortCoordinates(positions, Position::x);
+        this.sortedYs = sortCoordinates(positions, Position::y);
+    }
+
+    private static int[] sortCoordinates(Collection<Position> positions, ToIntFunction<Position> coordinate) {
+        return positions.stream()
+                .mapToInt(coordinate)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    // returns null if no dragged position is close enough to a guide
+    public Vector computeShift(List<Position> draggedPositions) {
+        int deltaX = findNearestDelta(draggedPositions, Position::x, sortedXs);
+        int deltaY = findNearestDelta(draggedPositions, Position::y, sortedYs);
+        if (deltaX == NO_DELTA && deltaY == NO_DELTA) {
+            return null;
+        }
+        return new Vector(deltaX == NO_DELTA ? 0 : deltaX, deltaY == NO_DELTA ? 0 : deltaY);
+    }
+
+    private static int findNearestDelta(List<Position> draggedPositions, ToIntFunction<Position> coordinate, int[] sortedCoordinates) {
+        int nearestDelta = NO_DELTA;
+        for (Position draggedPosition: draggedPositions) {
+            int delta = findNearestDelta(coordinate.applyAsInt(draggedPosition), sortedCoordinates);
+            if (delta != NO_DELTA && (nearestDelta == NO_DELTA || Math.abs(delta) < Math.abs(nearestDelta))) {
+                nearestDelta = delta;
+            }
+        }
+        return nearestDelta;
+    }
+
+    private static int findNearestDelta(int draggedCoordinate, int[] sortedCoordinates) {
+        int index = Arrays.binarySearch(sortedCoordinates, draggedCoordinate);
+        if (index >= 0) {
+            return 0;
+        }
+        int insertionIndex = -index - 1;
+        int nearestDelta = NO_DELTA;
+        if (insertionIndex > 0) {
+            nearestDelta = sortedCoordinates[insertionIndex - 1] - draggedCoordinate;
+        }
+        if (insertionIndex < sortedCoordinates.length) {
+            int delta = sortedCoordinates[insertionIndex] - draggedCoordinate;
+            if (nearestDelta == NO_DELTA || delta < Math.abs(nearestDelta)) {
+                nearestDelta = delta;
+            }
+        }
+        if (nearestDelta == NO_DELTA || Math.abs(nearestDelta) > MAGNETISM_RADIUS) {
+            return NO_DELTA;
+        }
+        return nearestDelta;
+    }
+
+    public void fillGuides(List<Position> draggedPositions, Vector shift, List<Integer> guidesX, List<Integer> guidesY) {
+        fillGuides(draggedPositions, Position::x, shift.x(), sortedXs, guidesX);
+        fillGuides(draggedPositions, Position::y, shift.y(), sortedYs, guidesY);
+    }
+
+    private static void fillGuides(List<Position> draggedPositions, ToIntFunction<Position> coordinate, int shift, int[] sortedCoordinates, List<Integer> guides) {
+        int[] shiftedCoordinates = draggedPositions.stream()
+                .mapToInt(coordinate)
+                .map(draggedCoordinate -> draggedCoordinate + shift)
+                .sorted()
+                .distinct()
+                .toArray();
+        for (int shiftedCoordinate: shiftedCoordinates) {
+            if (Arrays.binarySearch(sortedCoordinates, shiftedCoordinate) >= 0) {
+                guides.add(shiftedCoordinate);
+            }
+        }
+    }
+}
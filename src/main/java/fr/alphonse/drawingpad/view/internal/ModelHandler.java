@@ -10,35 +10,35 @@ import fr.alphonse.drawingpad.data.model.value.Value;
 import fr.alphonse.drawingpad.document.utils.GraphHandler;
 import lombok.experimental.UtilityClass;
 
-import java.util.List;
-import java.util.stream.Stream;
+import java.util.*;
 
 @UtilityClass
 public class ModelHandler {
 
     public static Object addObject(Position position, Drawing drawing) {
         Object object = makeObject(drawing);
-        drawing.getElements().add(object);
+        GraphHandler.addElement(object, drawing);
         drawing.getPositions().put(object, position);
         return object;
     }
 
     private static Object makeObject(Drawing drawing) {
         var object = new Object();
-        var id = GraphHandler.findAvailableId(drawing.getElements());
+        var id = GraphHandler.findAvailableId(drawing);
         object.setId(id);
         return object;
     }
 
-    public static void addCompletion(GraphElement base, Position position, Drawing drawing) {
+    public static Completion addCompletion(GraphElement base, Position position, Drawing drawing) {
         Completion completion = makeCompletion(base, drawing);
-        drawing.getElements().add(completion);
+        GraphHandler.addElement(completion, drawing);
         drawing.getPositions().put(completion, position);
+        return completion;
     }
 
     private static Completion makeCompletion(GraphElement base, Drawing drawing) {
         var completion = new Completion();
-        var id = GraphHandler.findAvailableId(drawing.getElements());
+        var id = GraphHandler.findAvailableId(drawing);
         completion.setId(id);
         completion.setBase(base);
         completion.setBaseId(base.getId());
@@ -46,17 +46,18 @@ public class ModelHandler {
         return completion;
     }
 
-    public void addLink(GraphElement origin, LinkDirection originLinkDirection, GraphElement destination, LinkDirection destinationLinkDirection, Position center, Graduation graduation, Drawing drawing) {
+    public Link addLink(GraphElement origin, LinkDirection originLinkDirection, GraphElement destination, LinkDirection destinationLinkDirection, Position center, Graduation graduation, Drawing drawing) {
         Link link = makeLink(origin, originLinkDirection, destination, destinationLinkDirection, graduation, drawing);
-        drawing.getElements().add(link);
+        GraphHandler.addElement(link, drawing);
         if (center != null) {
             drawing.getPositions().put(link, center);
         }
+        return link;
     }
 
     private static Link makeLink(GraphElement origin, LinkDirection originLinkDirection, GraphElement destination, LinkDirection destinationLinkDirection, Graduation graduation, Drawing drawing) {
         var link = new Link();
-        var id = GraphHandler.findAvailableId(drawing.getElements());
+        var id = GraphHandler.findAvailableId(drawing);
         link.setId(id);
         link.setOrigin(origin);
         link.setOriginLinkDirection(originLinkDirection);
@@ -71,28 +72,30 @@ public class ModelHandler {
     }
 
     public static void deleteElement(GraphElement element, Drawing drawing) {
-        List<GraphElement> dependentElements = listDependentElements(element, drawing);
-        drawing.getElements().removeAll(dependentElements);
-        for (GraphElement dependentElement: dependentElements) {
-            drawing.getPositions().remove(dependentElement);
-            drawing.getNamePositions().remove(dependentElement);
-        }
+        deleteElements(List.of(element), drawing);
+    }
+
+    public static void deleteElements(Collection<GraphElement> elements, Drawing drawing) {
+        List<GraphElement> dependentElements = listDependentElements(elements, drawing);
+        GraphHandler.removeElements(dependentElements, drawing);
     }
 
     public static List<GraphElement> listDependentElements(GraphElement baseElement, Drawing drawing) {
-        Stream<GraphElement> dependentElements = drawing.getElements().stream()
-                .filter(element -> isElementAttachedTo(element, baseElement))
-                .map(element -> listDependentElements(element, drawing))
-                .flatMap(List::stream);
-        return Stream.concat(Stream.of(baseElement), dependentElements)
-                .toList();
+        return listDependentElements(List.of(baseElement), drawing);
     }
 
-    private static boolean isElementAttachedTo(GraphElement element, GraphElement base) {
-        return switch (element) {
-            case Object ignored -> false;
-            case Completion completion -> completion.getBase() == base;
-            case Link link -> link.getOrigin() == base || link.getDestination() == base;
-        };
+    // the base elements are included
+    public static List<GraphElement> listDependentElements(Collection<GraphElement> baseElements, Drawing drawing) {
+        Set<GraphElement> dependentElements = new LinkedHashSet<>(baseElements);
+        Deque<GraphElement> elementsToVisit = new ArrayDeque<>(dependentElements);
+        while (!elementsToVisit.isEmpty()) {
+            GraphElement element = elementsToVisit.pop();
+            for (GraphElement dependentElement: GraphHandler.listDirectDependentElements(element, drawing)) {
+                if (dependentElements.add(dependentElement)) {
+                    elementsToVisit.push(dependentElement);
+                }
+            }
+        }
+        return List.copyOf(dependentElements);
     }
 }
@@ -0,0 +1,93 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Rectangle;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
+
+import java.util.*;
+
+public class RectangleSelectionManager {
+
+    private final Drawing model;
+
+    private final GeometryManager geometryManager;
+
+    private final Set<GraphElement> selectedElements = new LinkedHashSet<>();
+
+    // the elements that entered or left the selection at the last change
+    private final List<GraphElement> changedElements = new ArrayList<>();
+
+    private Rectangle rectangle;
+
+    public RectangleSelectionManager(Drawing model, GeometryManager geometryManager) {
+        this.model = model;
+        this.geometryManager = geometryManager;
+    }
+
+    public void startSelection() {
+        this.selectedElements.clear();
+        this.changedElements.clear();
+        this.rectangle = null;
+    }
+
+    public Set<GraphElement> changeRectangle(Rectangle newRectangle) {
+        changedElements.clear();
+        // only the elements near the edges of the rectangles can enter or leave the selection
+        for (GraphElement element: geometryManager.listElementsAroundRectangleChange(rectangle, newRectangle)) {
+            if (element instanceof Link) {
+                continue;
+            }
+            Position position = model.getPositions().get(element);
+            boolean isInRectangle = newRectangle.containsPosition(position);
+            boolean isSelected = selectedElements.contains(element);
+            if (isInRectangle && !isSelected) {
+                addElementWithLinks(element);
+            }
+            else if (!isInRectangle && isSelected) {
+                removeElementWithLinks(element);
+            }
+        }
+        this.rectangle = newRectangle;
+        return selectedElements;
+    }
+
+    public List<GraphElement> listChangedElements() {
+        return changedElements;
+    }
+
+    private void addElementWithLinks(GraphElement element) {
+        selectedElements.add(element);
+        changedElements.add(element);
+        Deque<GraphElement> elementsToVisit = new ArrayDeque<>();
+        elementsToVisit.push(element);
+        while (!elementsToVisit.isEmpty()) {
+            GraphElement visitedElement = elementsToVisit.pop();
+            for (GraphElement dependentElement: GraphHandler.listDirectDependentElements(visitedElement, model)) {
+                if (dependentElement instanceof Link link && !selectedElements.contains(link) && selectedElements.contains(link.getOrigin()) && selectedElements.contains(link.getDestination())) {
+                    selectedElements.add(link);
+                    changedElements.add(link);
+                    elementsToVisit.push(link);
+                }
+            }
+        }
+    }
+
+    private void removeElementWithLinks(GraphElement element) {
+        selectedElements.remove(element);
+        changedElements.add(element);
+        Deque<GraphElement> elementsToVisit = new ArrayDeque<>();
+        elementsToVisit.push(element);
+        while (!elementsToVisit.isEmpty()) {
+            GraphElement visitedElement = elementsToVisit.pop();
+            for (GraphElement dependentElement: GraphHandler.listDirectDependentElements(visitedElement, model)) {
+                if (dependentElement instanceof Link link && selectedElements.remove(link)) {
+                    changedElements.add(link);
+                    elementsToVisit.push(link);
+                }
+            }
+        }
+    }
+}
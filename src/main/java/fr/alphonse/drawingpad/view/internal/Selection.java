@@ -0,0 +1,90 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import lombok.Getter;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+// the selected elements in selection order, without duplicates and with a constant-time membership test
+public class Selection extends AbstractList<GraphElement> implements RandomAccess {
+
+    private final List<GraphElement> elements = new ArrayList<>();
+
+    private final Set<GraphElement> elementSet = new HashSet<>();
+
+    // incremented on every modification of the selection
+    @Getter
+    private long version;
+
+    @Override
+    public GraphElement get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public boolean contains(java.lang.Object element) {
+        return elementSet.contains(element);
+    }
+
+    @Override
+    public boolean add(GraphElement element) {
+        if (!elementSet.add(element)) {
+            return false;
+        }
+        elements.add(element);
+        version += 1;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends GraphElement> elementsToAdd) {
+        boolean didChange = false;
+        for (GraphElement element: elementsToAdd) {
+            didChange |= add(element);
+        }
+        return didChange;
+    }
+
+    @Override
+    public GraphElement remove(int index) {
+        GraphElement element = elements.remove(index);
+        elementSet.remove(element);
+        version += 1;
+        return element;
+    }
+
+    @Override
+    public boolean remove(java.lang.Object element) {
+        if (!elementSet.remove(element)) {
+            return false;
+        }
+        elements.remove(element);
+        version += 1;
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super GraphElement> filter) {
+        boolean didChange = elements.removeIf(element -> filter.test(element) && elementSet.remove(element));
+        if (didChange) {
+            version += 1;
+        }
+        return didChange;
+    }
+
+    @Override
+    public void clear() {
+        if (elements.isEmpty()) {
+            return;
+        }
+        elements.clear();
+        elementSet.clear();
+        version += 1;
+    }
+}
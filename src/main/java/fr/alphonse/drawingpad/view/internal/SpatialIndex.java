@@ -0,0 +1,162 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Rectangle;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+
+import java.util.*;
+
+// uniform grid: each element is registered in every cell where it can be reached within its radius
+public class SpatialIndex {
+
+    private static final int CELL_SIZE = 64;
+
+    private static final int SEGMENT_STEP = CELL_SIZE / 4;
+
+    private final Map<Long, List<GraphElement>> cells = new HashMap<>();
+
+    // the cells of each element, so that it can be removed without searching the grid
+    private final Map<GraphElement, Set<Long>> cellKeysByElement = new HashMap<>();
+
+    private record CellRange(int minX, int minY, int maxX, int maxY) {
+
+        private static final CellRange EMPTY = new CellRange(0, 0, -1, -1);
+
+        private static CellRange covering(Rectangle rectangle) {
+            return new CellRange(findCellCoordinate(rectangle.x()), findCellCoordinate(rectangle.y()), findCellCoordinate(rectangle.x() + rectangle.width()), findCellCoordinate(rectangle.y() + rectangle.height()));
+        }
+
+        private static CellRange inside(Rectangle rectangle) {
+            return new CellRange(Math.floorDiv(rectangle.x() + CELL_SIZE - 1, CELL_SIZE), Math.floorDiv(rectangle.y() + CELL_SIZE - 1, CELL_SIZE), findCellCoordinate(rectangle.x() + rectangle.width()) - 1, findCellCoordinate(rectangle.y() + rectangle.height()) - 1);
+        }
+
+        private CellRange intersect(CellRange range) {
+            return new CellRange(Math.max(minX, range.minX), Math.max(minY, range.minY), Math.min(maxX, range.maxX), Math.min(maxY, range.maxY));
+        }
+
+        private boolean contains(int cellX, int cellY) {
+            return cellX >= minX && cellX <= maxX && cellY >= minY && cellY <= maxY;
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        cellKeysByElement.clear();
+    }
+
+    public void remove(GraphElement element) {
+        Set<Long> keys = cellKeysByElement.remove(element);
+        if (keys == null) {
+            return;
+        }
+        for (Long key: keys) {
+            List<GraphElement> cellElements = cells.get(key);
+            cellElements.remove(element);
+            if (cellElements.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    public void addPoint(GraphElement element, Position position, int radius) {
+        Set<Long> keys = new HashSet<>();
+        fillCellKeysAround(keys, position.x(), position.y(), radius);
+        addElementToCells(element, keys);
+    }
+
+    public void addSegment(GraphElement element, Position position1, Position position2, int radius) {
+        Vector vector = Vector.between(position1, position2);
+        int stepCount = 1 + (int)(vector.length() / SEGMENT_STEP);
+        // every point of the segment is within a step of a sample
+        int margin = radius + SEGMENT_STEP;
+        Set<Long> keys = new HashSet<>();
+        for (int i=0 ; i<=stepCount ; i++) {
+            int x = position1.x() + (int)((long)vector.x() * i / stepCount);
+            int y = position1.y() + (int)((long)vector.y() * i / stepCount);
+            fillCellKeysAround(keys, x, y, margin);
+        }
+        addElementToCells(element, keys);
+    }
+
+    private static void fillCellKeysAround(Set<Long> keys, int x, int y, int margin) {
+        int minCellX = findCellCoordinate(x - margin);
+        int maxCellX = findCellCoordinate(x + margin);
+        int minCellY = findCellCoordinate(y - margin);
+        int maxCellY = findCellCoordinate(y + margin);
+        for (int cellX=minCellX ; cellX<=maxCellX ; cellX++) {
+            for (int cellY=minCellY ; cellY<=maxCellY ; cellY++) {
+                keys.add(makeCellKey(cellX, cellY));
+            }
+        }
+    }
+
+    // an element added in several parts, such as the halves of a link, is registered once per cell
+    private void addElementToCells(GraphElement element, Set<Long> keys) {
+        Set<Long> elementKeys = cellKeysByElement.computeIfAbsent(element, e -> new HashSet<>());
+        for (Long key: keys) {
+            if (elementKeys.add(key)) {
+                cells.computeIfAbsent(key, k -> new ArrayList<>()).add(element);
+            }
+        }
+    }
+
+    public void addRectangle(GraphElement element, Rectangle rectangle) {
+        CellRange range = CellRange.covering(rectangle);
+        Set<Long> keys = new HashSet<>();
+        for (int cellX=range.minX() ; cellX<=range.maxX() ; cellX++) {
+            for (int cellY=range.minY() ; cellY<=range.maxY() ; cellY++) {
+                keys.add(makeCellKey(cellX, cellY));
+            }
+        }
+        addElementToCells(element, keys);
+    }
+
+    public Set<GraphElement> listElementsInRectangle(Rectangle rectangle) {
+        Set<GraphElement> elements = new HashSet<>();
+        fillElementsInCellRange(elements, CellRange.covering(rectangle), CellRange.EMPTY);
+        return elements;
+    }
+
+    public List<GraphElement> listElementsNear(Position position) {
+        long key = makeCellKey(findCellCoordinate(position.x()), findCellCoordinate(position.y()));
+        return cells.getOrDefault(key, List.of());
+    }
+
+    // lists the elements of the cells that are not entirely inside both rectangles,
+    // which contain all the elements that may have entered or left the rectangle
+    public Set<GraphElement> listElementsAroundRectangleChange(Rectangle previousRectangle, Rectangle rectangle) {
+        Set<GraphElement> elements = new HashSet<>();
+        if (previousRectangle == null) {
+            fillElementsInCellRange(elements, CellRange.covering(rectangle), CellRange.EMPTY);
+            return elements;
+        }
+        CellRange unchangedRange = CellRange.inside(previousRectangle).intersect(CellRange.inside(rectangle));
+        fillElementsInCellRange(elements, CellRange.covering(previousRectangle), unchangedRange);
+        fillElementsInCellRange(elements, CellRange.covering(rectangle), unchangedRange);
+        return elements;
+    }
+
+    private void fillElementsInCellRange(Set<GraphElement> elements, CellRange range, CellRange excludedRange) {
+        for (int cellY=range.minY() ; cellY<=range.maxY() ; cellY++) {
+            for (int cellX=range.minX() ; cellX<=range.maxX() ; cellX++) {
+                if (excludedRange.contains(cellX, cellY)) {
+                    cellX = excludedRange.maxX();
+                    continue;
+                }
+                List<GraphElement> cellElements = cells.get(makeCellKey(cellX, cellY));
+                if (cellElements != null) {
+                    elements.addAll(cellElements);
+                }
+            }
+        }
+    }
+
+    private static int findCellCoordinate(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    private static long makeCellKey(int cellX, int cellY) {
+        return ((long)cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
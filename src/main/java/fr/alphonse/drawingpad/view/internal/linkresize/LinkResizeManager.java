@@ -1,6 +1,7 @@
 package fr.alphonse.drawingpad.view.internal.linkresize;
 
 import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.PositionTable;
 import fr.alphonse.drawingpad.data.geometry.Position;
 import fr.alphonse.drawingpad.data.geometry.Vector;
 import fr.alphonse.drawingpad.data.model.Completion;
@@ -8,6 +9,7 @@ import fr.alphonse.drawingpad.data.model.GraphElement;
 import fr.alphonse.drawingpad.data.model.Link;
 import fr.alphonse.drawingpad.data.model.Object;
 import fr.alphonse.drawingpad.document.utils.ChangeDetector;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
 
 import java.util.Comparator;
 import java.util.HashMap;
@@ -28,22 +30,20 @@ public class LinkResizeManager {
         this.changeDetector = changeDetector;
     }
 
-    public void resizeLinks(Link modelLink, LinkResizeModification modification) {
-        HashMap<GraphElement, Vector> shifts = listObjectShifts(modelLink, modification);
-        Map<GraphElement, Position> positions = model.getPositions();
+    // the component that asks for the resize repaints the shifted elements itself, so it is not notified
+    public void resizeLinks(Map<GraphElement, Vector> shifts, java.lang.Object callingListener) {
+        PositionTable<Position> positions = model.getPositions();
 
         for (Map.Entry<GraphElement, Vector> entry: shifts.entrySet()) {
-            GraphElement element = entry.getKey();
             Vector shift = entry.getValue();
-            Position position = positions.get(element);
-            Position newPosition = position.translate(shift);
-            positions.put(element, newPosition);
+            positions.translate(entry.getKey(), shift.x(), shift.y());
         }
 
-        changeDetector.notifyChange();
+        changeDetector.notifyChangeCausedBy(callingListener);
     }
 
-    private HashMap<GraphElement, Vector> listObjectShifts(Link link, LinkResizeModification modification) {
+    // the shifts are listed before the resize, so that the shifted elements can be repainted where they were
+    public HashMap<GraphElement, Vector> listObjectShifts(Link link, LinkResizeModification modification) {
         Object center = findResizeCenter(modification);
         Predicate<Link> mustLinkBeModifiedPredicate = makeMustLinkBeModifiedPredicate(link, modification);
         Vector shift = findModificationShift(modification);
@@ -125,16 +125,14 @@ public class LinkResizeManager {
     }
 
     private List<Completion> listCompletionsAround(GraphElement element) {
-        return model.getElements().stream()
+        return GraphHandler.listDirectDependentElements(element, model).stream()
                 .filter(Completion.class::isInstance).map(Completion.class::cast)
-                .filter(completion -> completion.getBase() == element)
                 .toList();
     }
 
     private List<Link> listLinksAround(GraphElement element) {
-        return model.getElements().stream()
+        return GraphHandler.listDirectDependentElements(element, model).stream()
                 .filter(Link.class::isInstance).map(Link.class::cast)
-                .filter(link -> link.getOrigin() == element || link.getDestination() == element)
                 .toList();
     }
 }
@@ -0,0 +1,104 @@
+package fr.alphonse.drawingpad.data;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeTrackerTest {
+
+    private ChangeTracker changeTracker;
+
+    @BeforeEach
+    void makeTracker() {
+        changeTracker = new ChangeTracker();
+    }
+
+    private static Object makeObject(int id) {
+        return Object.builder()
+                .id(id)
+                .build();
+    }
+
+    @Test
+    void nothingIsCollectedWithoutChange() {
+        assertNull(changeTracker.collectChanges());
+        assertEquals(0, changeTracker.getVersion());
+    }
+
+    @Test
+    void changedElementsAreCollectedOnce() {
+        Object object = makeObject(1);
+        Object otherObject = makeObject(2);
+
+        changeTracker.markChanged(object);
+        changeTracker.markChanged(otherObject);
+        changeTracker.markChanged(object);
+
+        assertEquals(3, changeTracker.getVersion());
+        assertEquals(Set.of(object, otherObject), changeTracker.collectChanges());
+        assertNull(changeTracker.collectChanges());
+        assertEquals(3, changeTracker.getVersion());
+    }
+
+    // such as a change of the note
+    @Test
+    void changeWithoutElementIsCollectedEmpty() {
+        changeTracker.markChanged();
+
+        assertEquals(1, changeTracker.getVersion());
+        assertEquals(Set.of(), changeTracker.collectChanges());
+        assertNull(changeTracker.collectChanges());
+    }
+
+    @Test
+    void changeLogsReadTheChangesAtTheirOwnPace() {
+        Object object = makeObject(1);
+        Object otherObject = makeObject(2);
+        ChangeTracker.ChangeLog changeLog = changeTracker.openChangeLog();
+        changeTracker.markChanged(object);
+        ChangeTracker.ChangeLog laterChangeLog = changeTracker.openChangeLog();
+        changeTracker.markChanged(otherObject);
+        changeTracker.markChanged();
+
+        assertEquals(Set.of(object, otherObject), changeTracker.collectChanges());
+        assertFalse(changeLog.isEmpty());
+        assertEquals(Set.of(object, otherObject), changeLog.collectChanges());
+        assertTrue(changeLog.isEmpty());
+        assertEquals(Set.of(), changeLog.collectChanges());
+        assertEquals(Set.of(otherObject), laterChangeLog.collectChanges());
+    }
+
+    @Test
+    void modificationsOfTheDrawingAreTracked() {
+        Drawing model = GraphHandler.makeEmptyModel();
+        ChangeTracker modelChangeTracker = model.getChangeTracker();
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        Object destination = ModelHandler.addObject(new Position(100, 0), model);
+        assertEquals(Set.of(origin, destination), modelChangeTracker.collectChanges());
+
+        Completion completion = ModelHandler.addCompletion(destination, new Position(100, 50), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        assertEquals(Set.of(completion, link), modelChangeTracker.collectChanges());
+
+        model.getPositions().put(origin, new Position(10, 10));
+        model.getNamePositions().put(destination, new Vector(5, 5));
+        assertEquals(Set.of(origin, destination), modelChangeTracker.collectChanges());
+
+        long version = modelChangeTracker.getVersion();
+        ModelHandler.deleteElement(destination, model);
+        assertTrue(modelChangeTracker.getVersion() > version);
+        assertTrue(modelChangeTracker.collectChanges().containsAll(Set.of(destination, completion, link)));
+        assertNull(modelChangeTracker.collectChanges());
+    }
+}
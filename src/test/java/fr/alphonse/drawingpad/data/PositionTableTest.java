@@ -0,0 +1,201 @@
+package fr.alphonse.drawingpad.data;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Object;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionTableTest {
+
+    private ChangeTracker changeTracker;
+
+    private PositionTable<Position> positions;
+
+    @BeforeEach
+    void makeTable() {
+        changeTracker = new ChangeTracker();
+        positions = PositionTable.ofPositions(changeTracker);
+    }
+
+    private static Object makeObject(int id) {
+        return Object.builder()
+                .id(id)
+                .build();
+    }
+
+    @Test
+    void putPositionIsReadBack() {
+        Object object = makeObject(3);
+
+        assertNull(positions.put(object, new Position(1, 2)));
+
+        assertEquals(new Position(1, 2), positions.get(object));
+        assertEquals(1, positions.getX(object));
+        assertEquals(2, positions.getY(object));
+        assertEquals(1, positions.size());
+        assertEquals(new Position(1, 2), positions.put(object, new Position(5, 6)));
+        assertEquals(1, positions.size());
+    }
+
+    @Test
+    void otherElementWithTheSameIdHasNoPosition() {
+        Object object = makeObject(3);
+        positions.put(object, new Position(1, 2));
+
+        assertNull(positions.get(makeObject(3)));
+        assertFalse(positions.containsKey(makeObject(3)));
+        assertThrows(NoSuchElementException.class, () -> positions.getX(makeObject(3)));
+    }
+
+    @Test
+    void removalKeepsTheOtherPositions() {
+        List<Object> objects = new ArrayList<>();
+        for (int id = 1 ; id <= 10 ; id++) {
+            objects.add(makeObject(id));
+            positions.put(objects.get(id - 1), new Position(id, -id));
+        }
+
+        assertEquals(new Position(1, -1), positions.remove(objects.get(0)));
+        assertEquals(new Position(5, -5), positions.remove(objects.get(4)));
+        assertNull(positions.remove(objects.get(4)));
+
+        assertEquals(8, positions.size());
+        for (Object object: objects) {
+            Position expectedPosition = (object.getId() == 1 || object.getId() == 5) ? null : new Position(object.getId(), -object.getId());
+            assertEquals(expectedPosition, positions.get(object));
+        }
+    }
+
+    @Test
+    void removedPositionIsRestored() {
+        Object object = makeObject(7);
+        Object other = makeObject(8);
+        positions.put(object, new Position(1, 2));
+        positions.put(other, new Position(3, 4));
+        positions.remove(object);
+
+        positions.put(object, new Position(1, 2));
+
+        assertEquals(Map.of(object, new Position(1, 2), other, new Position(3, 4)), new HashMap<>(positions));
+    }
+
+    @Test
+    void translationOnlyMovesExistingPositions() {
+        Object object = makeObject(1);
+        positions.put(object, new Position(1, 2));
+
+        assertTrue(positions.translate(object, 10, 20));
+        assertFalse(positions.translate(makeObject(2), 10, 20));
+
+        assertEquals(new Position(11, 22), positions.get(object));
+        assertEquals(1, positions.size());
+    }
+
+    @Test
+    void changesAreTracked() {
+        Object object = makeObject(1);
+        Object other = makeObject(2);
+        positions.put(object, new Position(1, 2));
+        positions.put(other, new Position(3, 4));
+        changeTracker.collectChanges();
+
+        positions.translate(object, 1, 1);
+
+        assertEquals(Set.of(object), changeTracker.collectChanges());
+
+        positions.remove(other);
+
+        assertEquals(Set.of(other), changeTracker.collectChanges());
+
+        positions.clear();
+
+        assertEquals(Set.of(object), changeTracker.collectChanges());
+        assertTrue(positions.isEmpty());
+    }
+
+    @Test
+    void iteratorRemovalVisitsEveryPosition() {
+        Map<GraphElement, Position> expectedPositions = new HashMap<>();
+        for (int id = 1 ; id <= 20 ; id++) {
+            Object object = makeObject(id);
+            positions.put(object, new Position(id, id));
+            expectedPositions.put(object, new Position(id, id));
+        }
+        List<GraphElement> visitedElements = new ArrayList<>();
+
+        Iterator<Map.Entry<GraphElement, Position>> iterator = positions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<GraphElement, Position> entry = iterator.next();
+            visitedElements.add(entry.getKey());
+            if (entry.getKey().getId() % 3 == 0) {
+                iterator.remove();
+            }
+        }
+        expectedPositions.keySet().removeIf(element -> element.getId() % 3 == 0);
+
+        assertEquals(20, visitedElements.size());
+        assertEquals(20, new HashSet<>(visitedElements).size());
+        assertEquals(expectedPositions, new HashMap<>(positions));
+    }
+
+    @Test
+    void entriesWriteThroughTheTable() {
+        Object object = makeObject(1);
+        positions.put(object, new Position(1, 2));
+
+        Map.Entry<GraphElement, Position> entry = positions.entrySet().iterator().next();
+        entry.setValue(new Position(7, 8));
+
+        assertEquals(new Position(7, 8), positions.get(object));
+        assertEquals(new Position(7, 8), entry.getValue());
+    }
+
+    @Test
+    void sparseIdsOnlyTakeTheirSlots() {
+        Object object = makeObject(Drawing.MAX_ID);
+
+        positions.put(object, new Position(1, 2));
+
+        assertEquals(new Position(1, 2), positions.get(object));
+        assertEquals(1, positions.size());
+    }
+
+    @Test
+    void absurdIdIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> positions.put(makeObject(Drawing.MAX_ID + 1), new Position(0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> positions.put(makeObject(-1), new Position(0, 0)));
+    }
+
+    @Test
+    void randomOperationsMatchAMap() {
+        Random random = new Random(5);
+        List<Object> objects = new ArrayList<>();
+        for (int id = 0 ; id < 300 ; id++) {
+            objects.add(makeObject(id));
+        }
+        Map<GraphElement, Position> expectedPositions = new HashMap<>();
+
+        for (int step = 0 ; step < 20_000 ; step++) {
+            Object object = objects.get(random.nextInt(objects.size()));
+            switch (random.nextInt(4)) {
+                case 0, 1 -> {
+                    Position position = new Position(random.nextInt(100), random.nextInt(100));
+                    assertEquals(expectedPositions.put(object, position), positions.put(object, position));
+                }
+                case 2 -> assertEquals(expectedPositions.remove(object), positions.remove(object));
+                default -> {
+                    assertEquals(expectedPositions.containsKey(object), positions.translate(object, 1, -1));
+                    expectedPositions.computeIfPresent(object, (element, position) -> new Position(position.x() + 1, position.y() - 1));
+                }
+            }
+            assertEquals(expectedPositions.get(object), positions.get(object));
+        }
+
+        assertEquals(expectedPositions, new HashMap<>(positions));
+    }
+}
@@ -0,0 +1,192 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import javax.swing.*;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeDetectorTest {
+
+    private Drawing model;
+
+    private ChangeDetector<Drawing, Set<GraphElement>> changeDetector;
+
+    private final List<Set<GraphElement>> notifiedChanges = new ArrayList<>();
+
+    // whether each notification was a later one
+    private final List<Boolean> laterNotifications = new ArrayList<>();
+
+    // a listener of its own, the detector only keeping soft references to them
+    private final java.lang.Object listener = new java.lang.Object();
+
+    private final java.lang.Object otherListener = new java.lang.Object();
+
+    @BeforeEach
+    void makeDetector() {
+        model = GraphHandler.makeEmptyModel();
+        changeDetector = new ChangeDetector<>(model, GraphHandler::collectChangedElements);
+        changeDetector.addListener(listener, (target, changes) -> {
+            notifiedChanges.add(changes);
+            laterNotifications.add(changeDetector.isNotifyingLaterChanges());
+        });
+    }
+
+    // the later notifications are made on the event dispatch thread
+    private static void onEventThread(Executable action) throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> assertDoesNotThrow(action));
+    }
+
+    @Test
+    void changesAreNotifiedToTheOtherListeners() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+
+        changeDetector.notifyChangeCausedBy(otherListener);
+        changeDetector.notifyChangeCausedBy(otherListener);
+
+        assertEquals(List.of(Set.of(object)), notifiedChanges);
+        assertEquals(List.of(false), laterNotifications);
+    }
+
+    @Test
+    void callingListenerIsNotNotified() {
+        ModelHandler.addObject(new Position(0, 0), model);
+
+        changeDetector.notifyChangeCausedBy(listener);
+
+        assertEquals(List.of(), notifiedChanges);
+    }
+
+    @Test
+    void laterChangesAreNotifiedOnceAtTheEndOfTheEvents() throws Exception {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        changeDetector.notifyChange();
+
+        onEventThread(() -> {
+            for (int i = 0 ; i < 5 ; i++) {
+                changeDetector.notifyChangeLaterCausedBy(otherListener);
+                model.getPositions().translate(object, 1, 0);
+            }
+            assertEquals(1, notifiedChanges.size());
+        });
+        onEventThread(GraphHandler::doNothing);
+
+        assertEquals(List.of(Set.of(object), Set.of(object)), notifiedChanges);
+        assertEquals(List.of(false, true), laterNotifications);
+    }
+
+    @Test
+    void flushNotifiesThePendingChangesRightAway() throws Exception {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        changeDetector.notifyChange();
+
+        onEventThread(() -> {
+            changeDetector.notifyChangeLaterCausedBy(otherListener);
+            model.getPositions().translate(object, 1, 0);
+            changeDetector.flushPendingNotification();
+            assertEquals(List.of(false, true), laterNotifications);
+        });
+        onEventThread(GraphHandler::doNothing);
+
+        assertEquals(2, notifiedChanges.size());
+    }
+
+    @Test
+    void otherNotificationTakesThePendingChangesAlong() throws Exception {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        changeDetector.notifyChange();
+
+        onEventThread(() -> {
+            changeDetector.notifyChangeLaterCausedBy(otherListener);
+            model.getPositions().translate(object, 1, 0);
+            Object otherObject = ModelHandler.addObject(new Position(50, 0), model);
+            changeDetector.notifyChangeCausedBy(otherListener);
+            assertEquals(Set.of(object, otherObject), notifiedChanges.get(1));
+        });
+        onEventThread(GraphHandler::doNothing);
+
+        // the history does not take the other change for a nudge
+        assertEquals(List.of(false, false), laterNotifications);
+    }
+
+    @Test
+    void callingListenerOfAllTheLaterChangesIsNotNotified() throws Exception {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        changeDetector.notifyChange();
+
+        onEventThread(() -> {
+            changeDetector.notifyChangeLaterCausedBy(listener);
+            model.getPositions().translate(object, 1, 0);
+            changeDetector.notifyChangeLaterCausedBy(listener);
+            model.getPositions().translate(object, 1, 0);
+        });
+        onEventThread(GraphHandler::doNothing);
+
+        assertEquals(1, notifiedChanges.size());
+    }
+
+    @Test
+    void transactionIsNotifiedOnceAtItsCommit() {
+        changeDetector.beginTransaction();
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        changeDetector.notifyChangeCausedBy(otherListener);
+        changeDetector.runTransactionCausedBy(otherListener, () -> {
+            model.getPositions().translate(object, 1, 0);
+            changeDetector.notifyChangeCausedBy(otherListener);
+        });
+        Object otherObject = ModelHandler.addObject(new Position(50, 0), model);
+        assertEquals(List.of(), notifiedChanges);
+
+        changeDetector.commitTransactionCausedBy(otherListener);
+
+        assertEquals(List.of(Set.of(object, otherObject)), notifiedChanges);
+    }
+
+    @Test
+    void transactionOfTheListenerIsNotNotifiedToIt() {
+        changeDetector.runTransactionCausedBy(listener, () -> ModelHandler.addObject(new Position(0, 0), model));
+
+        assertEquals(List.of(), notifiedChanges);
+    }
+
+    @Test
+    void pendingChangesAreNotPartOfTheTransaction() throws Exception {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        changeDetector.notifyChange();
+
+        onEventThread(() -> {
+            changeDetector.notifyChangeLaterCausedBy(otherListener);
+            model.getPositions().translate(object, 1, 0);
+            changeDetector.runTransactionCausedBy(otherListener, () -> ModelHandler.addObject(new Position(50, 0), model));
+        });
+        onEventThread(GraphHandler::doNothing);
+
+        assertEquals(3, notifiedChanges.size());
+        assertEquals(Set.of(object), notifiedChanges.get(1));
+        assertEquals(List.of(false, true, false), laterNotifications);
+    }
+
+    @Test
+    void failedTransactionIsCommittedAnyway() {
+        RuntimeException failure = new RuntimeException();
+
+        assertSame(failure, assertThrows(RuntimeException.class, () -> changeDetector.runTransactionCausedBy(otherListener, () -> {
+            ModelHandler.addObject(new Position(0, 0), model);
+            throw failure;
+        })));
+
+        assertEquals(1, notifiedChanges.size());
+        assertThrows(IllegalStateException.class, changeDetector::commitTransaction);
+    }
+}
@@ -0,0 +1,117 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DependencyIndexTest {
+
+    private Drawing model;
+
+    private Object origin;
+
+    private Object destination;
+
+    @BeforeEach
+    void makeModel() {
+        model = GraphHandler.makeEmptyModel();
+        origin = ModelHandler.addObject(new Position(0, 0), model);
+        destination = ModelHandler.addObject(new Position(100, 0), model);
+    }
+
+    @Test
+    void addedElementsAreDependentsOfTheirBases() {
+        Completion completion = ModelHandler.addCompletion(origin, new Position(0, 50), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+
+        assertEquals(List.of(completion, link), GraphHandler.listDirectDependentElements(origin, model));
+        assertEquals(List.of(link), GraphHandler.listDirectDependentElements(destination, model));
+        assertEquals(List.of(), GraphHandler.listDirectDependentElements(link, model));
+    }
+
+    @Test
+    void loopIsDependentOnceOfItsElement() {
+        Link loop = ModelHandler.addLink(origin, null, origin, null, null, Graduation.ONE, model);
+
+        assertEquals(List.of(loop), GraphHandler.listDirectDependentElements(origin, model));
+    }
+
+    @Test
+    void linkBetweenLinksIsDependentOfBothLinks() {
+        Object other = ModelHandler.addObject(new Position(0, 100), model);
+        Link firstLink = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        Link secondLink = ModelHandler.addLink(origin, null, other, null, null, Graduation.ONE, model);
+        Link linkBetweenLinks = ModelHandler.addLink(firstLink, null, secondLink, null, null, Graduation.ONE, model);
+
+        assertEquals(List.of(linkBetweenLinks), GraphHandler.listDirectDependentElements(firstLink, model));
+        assertEquals(List.of(linkBetweenLinks), GraphHandler.listDirectDependentElements(secondLink, model));
+        assertEquals(Set.of(origin, firstLink, secondLink, linkBetweenLinks), new HashSet<>(ModelHandler.listDependentElements(origin, model)));
+    }
+
+    @Test
+    void removedElementLeavesTheDependentsOfItsBases() {
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+
+        ModelHandler.deleteElement(link, model);
+
+        assertEquals(List.of(), GraphHandler.listDirectDependentElements(origin, model));
+        assertEquals(List.of(), GraphHandler.listDirectDependentElements(destination, model));
+    }
+
+    @Test
+    void removedBaseTakesItsDependentsAlong() {
+        Completion completion = ModelHandler.addCompletion(origin, new Position(0, 50), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+
+        ModelHandler.deleteElement(origin, model);
+
+        assertEquals(List.of(destination), model.getElements());
+        assertFalse(model.getDependentElements().containsKey(origin));
+        assertFalse(model.getElementsById().containsKey(completion.getId()));
+        assertFalse(model.getElementsById().containsKey(link.getId()));
+        assertEquals(List.of(), GraphHandler.listDirectDependentElements(destination, model));
+    }
+
+    @Test
+    void restoredElementsAreDependentsAgain() {
+        Completion completion = ModelHandler.addCompletion(origin, new Position(0, 50), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        List<GraphElement> removedElements = ModelHandler.listDependentElements(origin, model);
+        ModelHandler.deleteElement(origin, model);
+
+        GraphHandler.restoreElements(removedElements, model);
+
+        assertSame(origin, model.getElementsById().get(origin.getId()));
+        assertEquals(List.of(completion, link), GraphHandler.listDirectDependentElements(origin, model));
+        assertEquals(List.of(link), GraphHandler.listDirectDependentElements(destination, model));
+    }
+
+    @Test
+    void indexOfLoadedModelMatchesIndexBuiltIncrementally() {
+        ModelHandler.addCompletion(origin, new Position(0, 50), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        ModelHandler.addLink(link, null, destination, null, null, Graduation.ONE, model);
+
+        Drawing loadedModel = GraphHandler.mapJsonToModel(GraphHandler.mapModelToJson(model));
+
+        for (GraphElement element: model.getElements()) {
+            GraphElement loadedElement = loadedModel.getElementsById().get(element.getId());
+            List<Integer> dependentIds = GraphHandler.listDirectDependentElements(element, model).stream().map(GraphElement::getId).toList();
+            List<Integer> loadedDependentIds = GraphHandler.listDirectDependentElements(loadedElement, loadedModel).stream().map(GraphElement::getId).toList();
+            assertEquals(dependentIds, loadedDependentIds);
+        }
+    }
+}
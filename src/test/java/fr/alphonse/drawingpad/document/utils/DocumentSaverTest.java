@@ -0,0 +1,132 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentSaverTest {
+
+    @TempDir
+    Path directory;
+
+    private Path path;
+
+    private final List<DocumentSaver.SaveResult> reportedResults = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch reportLatch = new CountDownLatch(1);
+
+    private DocumentSaver saver;
+
+    @BeforeEach
+    void makeSaver() {
+        path = directory.resolve("drawing.json");
+        saver = new DocumentSaver(result -> {
+            reportedResults.add(result);
+            reportLatch.countDown();
+        });
+    }
+
+    private static Drawing makeDrawing() {
+        Drawing model = GraphHandler.makeEmptyModel();
+        ModelHandler.addObject(new Position(0, 0), model);
+        return model;
+    }
+
+    private long save(Path path) {
+        return saver.save(GraphHandler.mapModelToJson(makeDrawing()), path, false);
+    }
+
+    // the document waits for the saves on the event dispatch thread, where the results are reported
+    private DocumentSaver.SaveResult waitForSaves() throws InterruptedException, InvocationTargetException {
+        DocumentSaver.SaveResult[] result = new DocumentSaver.SaveResult[1];
+        SwingUtilities.invokeAndWait(() -> result[0] = assertDoesNotThrow(saver::waitForSaves));
+        return result[0];
+    }
+
+    // the saves are started in the same event as the wait, so that their results can't be reported before it
+    private DocumentSaver.SaveResult waitForSavesAfter(Runnable saves) throws InterruptedException, InvocationTargetException {
+        DocumentSaver.SaveResult[] result = new DocumentSaver.SaveResult[1];
+        SwingUtilities.invokeAndWait(() -> {
+            saves.run();
+            result[0] = assertDoesNotThrow(saver::waitForSaves);
+        });
+        return result[0];
+    }
+
+    private static void waitForEndOfEvents() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(GraphHandler::doNothing);
+    }
+
+    @Test
+    void nothingIsAwaitedWithoutSave() throws Exception {
+        assertNull(waitForSaves());
+        assertFalse(saver.isSaving());
+    }
+
+    @Test
+    void awaitedSaveIsWrittenAndNotReportedAgain() throws Exception {
+        long[] saveNumber = new long[1];
+
+        DocumentSaver.SaveResult result = waitForSavesAfter(() -> saveNumber[0] = save(path));
+        waitForEndOfEvents();
+
+        assertEquals(saveNumber[0], result.saveNumber());
+        assertTrue(result.isSuccessful());
+        assertTrue(Files.exists(path));
+        assertFalse(saver.isSaving());
+        assertEquals(List.of(), reportedResults);
+    }
+
+    @Test
+    void reportedSaveIsNotAwaitedAgain() throws Exception {
+        save(path);
+        assertTrue(reportLatch.await(10, TimeUnit.SECONDS));
+
+        assertNull(waitForSaves());
+        assertEquals(1, reportedResults.size());
+        assertTrue(reportedResults.get(0).isSuccessful());
+    }
+
+    @Test
+    void failureOnlyConcernsItsOwnSave() throws Exception {
+        DocumentSaver.SaveResult failedResult = waitForSavesAfter(() -> save(directory.resolve("missing").resolve("drawing.json")));
+
+        assertFalse(failedResult.isSuccessful());
+        assertNotNull(failedResult.exception());
+        assertNull(waitForSaves());
+
+        assertTrue(waitForSavesAfter(() -> save(path)).isSuccessful());
+        assertNull(waitForSaves());
+    }
+
+    @Test
+    void failuresOfReplacedSavesDoNotHideTheLastResult() throws Exception {
+        Path missingPath = directory.resolve("missing").resolve("drawing.json");
+        for (int i = 0 ; i < 20 ; i++) {
+            save(missingPath);
+        }
+        long[] lastSaveNumber = new long[1];
+
+        DocumentSaver.SaveResult result = waitForSavesAfter(() -> lastSaveNumber[0] = save(path));
+        waitForEndOfEvents();
+
+        assertEquals(lastSaveNumber[0], result.saveNumber());
+        assertTrue(result.isSuccessful());
+        // only the failures reported before the wait reach the listener
+        assertTrue(reportedResults.stream().noneMatch(DocumentSaver.SaveResult::isSuccessful));
+    }
+}
@@ -0,0 +1,184 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.reference.LinkDirection;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.data.model.value.Value;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawingBinaryFormatTest {
+
+    private static final JsonMapper JSON_MAPPER = JsonMapper.builder()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .build();
+
+    // the offset of the payload size, after the magic, version and flags
+    private static final int PAYLOAD_SIZE_OFFSET = Integer.BYTES + Short.BYTES + Byte.BYTES;
+
+    // the offset of the string count, after the header
+    private static final int STRING_COUNT_OFFSET = PAYLOAD_SIZE_OFFSET + Integer.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private static Drawing makeDrawing() {
+        Drawing model = GraphHandler.makeEmptyModel();
+        Object origin = ModelHandler.addObject(new Position(-10, 20), model);
+        origin.setName("origine é");
+        model.getNamePositions().put(origin, new Vector(5, -5));
+        Object destination = ModelHandler.addObject(new Position(300, -200), model);
+        destination.setName("origine é");
+        Completion completion = ModelHandler.addCompletion(origin, new Position(-10, 60), model);
+        completion.setValue(Value.builder().graduation(Graduation.GREATER).numberInGraduation(1.5).build());
+        Completion completionWithoutValue = ModelHandler.addCompletion(destination, new Position(300, -160), model);
+        completionWithoutValue.setValue(null);
+        Link link = ModelHandler.addLink(origin, null, destination, null, new Position(150, -90), Graduation.ONE, model);
+        link.setName("lien");
+        Link linkBetweenLinks = ModelHandler.addLink(link, LinkDirection.DIRECT, completion, LinkDirection.REVERSE, null, Graduation.ZERO, model);
+        linkBetweenLinks.setFactor(null);
+        model.setNote("une note\nsur deux lignes");
+        return model;
+    }
+
+    private static String describeModel(Drawing model) throws JsonProcessingException {
+        DrawingJson json = GraphHandler.mapModelToJson(model);
+        json.getElements().sort(Comparator.comparing(GraphElement::getId));
+        return JSON_MAPPER.writeValueAsString(json);
+    }
+
+    private Path writeDrawing(Drawing model, boolean isCompressed) throws IOException {
+        Path path = directory.resolve("drawing." + DrawingBinaryFormat.EXTENSION);
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
+            DrawingBinaryFormat.writeDrawing(GraphHandler.mapModelToJson(model), outputStream, isCompressed);
+        }
+        return path;
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void readDrawingIsTheWrittenDrawing(boolean isCompressed) throws IOException {
+        Drawing model = makeDrawing();
+
+        Drawing readModel = DrawingBinaryFormat.readDrawing(writeDrawing(model, isCompressed));
+
+        assertEquals(describeModel(model), describeModel(readModel));
+        assertEquals(model.getNextId(), readModel.getNextId());
+        for (GraphElement element: model.getElements()) {
+            GraphElement readElement = readModel.getElementsById().get(element.getId());
+            assertEquals(GraphHandler.listDirectDependentElements(element, model).size(), GraphHandler.listDirectDependentElements(readElement, readModel).size());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void emptyDrawingIsReadBack(boolean isCompressed) throws IOException {
+        Drawing model = GraphHandler.makeEmptyModel();
+
+        Drawing readModel = DrawingBinaryFormat.readDrawing(writeDrawing(model, isCompressed));
+
+        assertEquals(describeModel(model), describeModel(readModel));
+    }
+
+    @Test
+    void readFileCanBeReplacedRightAway() throws IOException {
+        Drawing model = makeDrawing();
+        Path path = writeDrawing(model, true);
+        Drawing readModel = DrawingBinaryFormat.readDrawing(path);
+        readModel.setNote("autre note");
+
+        DrawingWriter.writeDrawing(GraphHandler.mapModelToJson(readModel), path, true);
+
+        assertEquals("autre note", DrawingBinaryFormat.readDrawing(path).getNote());
+    }
+
+    @Test
+    void compressionMakesRepetitiveDrawingsSmaller() throws IOException {
+        Drawing model = GraphHandler.makeEmptyModel();
+        for (int i = 0 ; i < 1000 ; i++) {
+            ModelHandler.addObject(new Position(i, i), model).setName("objet");
+        }
+
+        long size = Files.size(writeDrawing(model, false));
+        long compressedSize = Files.size(writeDrawing(model, true));
+
+        assertTrue(compressedSize < size / 2);
+    }
+
+    @Test
+    void otherFileIsRejected() throws IOException {
+        Path path = directory.resolve("other." + DrawingBinaryFormat.EXTENSION);
+        Files.writeString(path, "{\"elements\": []}");
+
+        assertThrows(IOException.class, () -> DrawingBinaryFormat.readDrawing(path));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void truncatedFileIsRejected(boolean isCompressed) throws IOException {
+        Path path = writeDrawing(makeDrawing(), isCompressed);
+        byte[] bytes = Files.readAllBytes(path);
+
+        for (int length = 0 ; length < bytes.length ; length++) {
+            Files.write(path, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> DrawingBinaryFormat.readDrawing(path), "cut at " + length);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void absurdPayloadSizeIsRejected(boolean isCompressed) throws IOException {
+        Path path = writeDrawing(makeDrawing(), isCompressed);
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).putInt(PAYLOAD_SIZE_OFFSET, Integer.MAX_VALUE);
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> DrawingBinaryFormat.readDrawing(path));
+    }
+
+    @Test
+    void absurdCountIsRejectedBeforeAllocating() throws IOException {
+        Path path = writeDrawing(makeDrawing(), false);
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).putInt(STRING_COUNT_OFFSET, Integer.MAX_VALUE);
+        Files.write(path, bytes);
+
+        IOException exception = assertThrows(IOException.class, () -> DrawingBinaryFormat.readDrawing(path));
+        assertTrue(exception.getMessage().contains("count"));
+    }
+
+    @Test
+    void absurdElementIdIsRejected() throws IOException {
+        Drawing model = GraphHandler.makeEmptyModel();
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        model.getPositions().remove(object);
+        object.setId(Drawing.MAX_ID + 1);
+
+        Path path = writeDrawing(model, false);
+
+        assertThrows(IOException.class, () -> DrawingBinaryFormat.readDrawing(path));
+    }
+}
@@ -0,0 +1,299 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.data.model.value.Value;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawingHistoryTest {
+
+    private static final JsonMapper JSON_MAPPER = JsonMapper.builder()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .build();
+
+    private Drawing model;
+
+    private DrawingHistory history;
+
+    @BeforeEach
+    void makeModel() {
+        model = GraphHandler.makeEmptyModel();
+        history = new DrawingHistory(model, Long.MAX_VALUE);
+    }
+
+    // the history receives the changes as the document does, once per notification
+    private void registerChanges() {
+        history.registerChanges(GraphHandler.collectChangedElements(model), false);
+    }
+
+    // the nudges are the moves made with the arrow keys
+    private void registerNudge() {
+        history.registerChanges(GraphHandler.collectChangedElements(model), true);
+    }
+
+    // the changes made by the history are not registered again
+    private void undo() {
+        history.undo();
+        GraphHandler.collectChangedElements(model);
+    }
+
+    private void redo() {
+        history.redo();
+        GraphHandler.collectChangedElements(model);
+    }
+
+    // the elements are restored at the end of the list, so they are compared by id
+    private String describeModel() throws JsonProcessingException {
+        DrawingJson json = GraphHandler.mapModelToJson(model);
+        json.getElements().sort(Comparator.comparing(GraphElement::getId));
+        return JSON_MAPPER.writeValueAsString(json);
+    }
+
+    @Test
+    void undoAndRedoGoThroughTheRegisteredStates() throws JsonProcessingException {
+        List<String> states = new ArrayList<>();
+        states.add(describeModel());
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        registerChanges();
+        states.add(describeModel());
+        Object destination = ModelHandler.addObject(new Position(100, 0), model);
+        Completion completion = ModelHandler.addCompletion(origin, new Position(0, 50), model);
+        registerChanges();
+        states.add(describeModel());
+        Link link = ModelHandler.addLink(origin, null, destination, null, new Position(50, 20), Graduation.ONE, model);
+        registerChanges();
+        states.add(describeModel());
+        destination.setName("destination");
+        model.getChangeTracker().markChanged(destination);
+        model.getNamePositions().put(destination, new Vector(0, -20));
+        registerChanges();
+        states.add(describeModel());
+        completion.setValue(Value.builder().graduation(Graduation.GREATER).build());
+        model.getChangeTracker().markChanged(completion);
+        model.setNote("note");
+        model.getChangeTracker().markChanged();
+        registerChanges();
+        states.add(describeModel());
+        ModelHandler.deleteElement(origin, model);
+        registerChanges();
+        states.add(describeModel());
+
+        for (int step = states.size() - 2 ; step >= 0 ; step--) {
+            undo();
+            assertEquals(states.get(step), describeModel(), "undone to step " + step);
+        }
+        assertFalse(history.canUndo());
+        for (int step = 1 ; step < states.size() ; step++) {
+            redo();
+            assertEquals(states.get(step), describeModel(), "redone to step " + step);
+        }
+        assertFalse(history.canRedo());
+        assertFalse(model.getElementsById().containsKey(link.getId()));
+    }
+
+    @Test
+    void undoRestoresTheDependencies() {
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        Object destination = ModelHandler.addObject(new Position(100, 0), model);
+        registerChanges();
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        registerChanges();
+        ModelHandler.deleteElement(origin, model);
+        registerChanges();
+
+        undo();
+
+        GraphElement restoredOrigin = model.getElementsById().get(origin.getId());
+        GraphElement restoredLink = model.getElementsById().get(link.getId());
+        assertEquals(List.of(restoredLink), GraphHandler.listDirectDependentElements(restoredOrigin, model));
+        assertEquals(List.of(restoredLink), GraphHandler.listDirectDependentElements(destination, model));
+        assertSame(restoredOrigin, ((Link) restoredLink).getOrigin());
+    }
+
+    @Test
+    void undoRestoresMissingValues() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        Completion completion = ModelHandler.addCompletion(object, new Position(0, 50), model);
+        Link link = ModelHandler.addLink(object, null, completion, null, null, Graduation.ONE, model);
+        completion.setValue(null);
+        link.setFactor(null);
+        registerChanges();
+        completion.setValue(Value.builder().graduation(Graduation.ONE).build());
+        link.setFactor(Value.builder().numberInGraduation(2.0).build());
+        model.getChangeTracker().markChanged(completion);
+        model.getChangeTracker().markChanged(link);
+        registerChanges();
+
+        undo();
+
+        assertNull(completion.getValue());
+        assertNull(link.getFactor());
+
+        redo();
+
+        assertEquals(Graduation.ONE, completion.getValue().getGraduation());
+        assertEquals(2.0, link.getFactor().getNumberInGraduation());
+    }
+
+    @Test
+    void burstOfNudgesIsUndoneInOneStep() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        Completion completion = ModelHandler.addCompletion(object, new Position(0, 50), model);
+        registerChanges();
+        for (int i = 0 ; i < 5 ; i++) {
+            model.getPositions().translate(object, 10, 0);
+            model.getPositions().translate(completion, 10, 0);
+            registerNudge();
+        }
+
+        undo();
+
+        assertEquals(new Position(0, 0), model.getPositions().get(object));
+        assertEquals(new Position(0, 50), model.getPositions().get(completion));
+
+        redo();
+
+        assertEquals(new Position(50, 0), model.getPositions().get(object));
+        assertEquals(new Position(50, 50), model.getPositions().get(completion));
+    }
+
+    @Test
+    void nudgeInAnotherDirectionIsAnotherStep() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        registerChanges();
+        model.getPositions().translate(object, 10, 0);
+        registerNudge();
+        model.getPositions().translate(object, 10, 0);
+        registerNudge();
+        model.getPositions().translate(object, 0, 10);
+        registerNudge();
+
+        undo();
+
+        assertEquals(new Position(20, 0), model.getPositions().get(object));
+
+        undo();
+
+        assertEquals(new Position(0, 0), model.getPositions().get(object));
+    }
+
+    @Test
+    void nudgeAfterUndoIsNotMergedWithTheUndoneStep() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        registerChanges();
+        model.getPositions().translate(object, 10, 0);
+        registerNudge();
+        undo();
+        model.getPositions().translate(object, 10, 0);
+        registerNudge();
+
+        undo();
+
+        assertEquals(new Position(0, 0), model.getPositions().get(object));
+
+        undo();
+
+        assertTrue(history.isAtInitialStep());
+        assertFalse(model.getElementsById().containsKey(object.getId()));
+    }
+
+    @Test
+    void separateDragsAreSeparateSteps() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        registerChanges();
+        model.getPositions().translate(object, 30, 0);
+        registerChanges();
+        model.getPositions().translate(object, 30, 0);
+        registerChanges();
+
+        undo();
+
+        assertEquals(new Position(30, 0), model.getPositions().get(object));
+    }
+
+    @Test
+    void nudgeIsNotMergedWithTheDragBeforeIt() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        registerChanges();
+        model.getPositions().translate(object, 30, 0);
+        registerChanges();
+        model.getPositions().translate(object, 1, 0);
+        registerNudge();
+        model.getPositions().translate(object, 1, 0);
+        registerNudge();
+
+        undo();
+
+        assertEquals(new Position(30, 0), model.getPositions().get(object));
+    }
+
+    @Test
+    void jumpsReachTheSameStatesAsSingleSteps() throws JsonProcessingException {
+        Random random = new Random(7);
+        List<String> states = new ArrayList<>();
+        states.add(describeModel());
+        for (int step = 0 ; step < 250 ; step++) {
+            List<GraphElement> elements = model.getElements();
+            if (elements.size() < 3 || random.nextInt(4) == 0) {
+                ModelHandler.addObject(new Position(random.nextInt(500), random.nextInt(500)), model);
+            }
+            else if (random.nextBoolean()) {
+                GraphElement element = elements.get(random.nextInt(elements.size()));
+                model.getPositions().put(element, new Position(random.nextInt(500), random.nextInt(500)));
+            }
+            else {
+                ModelHandler.deleteElement(elements.get(random.nextInt(elements.size())), model);
+            }
+            registerChanges();
+            states.add(describeModel());
+        }
+
+        for (int jump = 0 ; jump < 30 ; jump++) {
+            int step = random.nextInt(states.size());
+            history.moveToStep(step);
+            GraphHandler.collectChangedElements(model);
+            assertEquals(states.get(step), describeModel(), "jumped to step " + step);
+        }
+    }
+
+    @Test
+    void memoryLimitDropsTheOldestSteps() throws JsonProcessingException {
+        history = new DrawingHistory(model, 20_000);
+        List<String> states = new ArrayList<>();
+        states.add(describeModel());
+        for (int step = 0 ; step < 200 ; step++) {
+            ModelHandler.addObject(new Position(step, step), model);
+            registerChanges();
+            states.add(describeModel());
+        }
+
+        int undoneSteps = 0;
+        while (history.canUndo()) {
+            undo();
+            undoneSteps += 1;
+            assertEquals(states.get(states.size() - 1 - undoneSteps), describeModel());
+        }
+
+        assertTrue(undoneSteps > 0 && undoneSteps < 200);
+        assertTrue(history.getHeapCost() <= 20_000);
+    }
+}
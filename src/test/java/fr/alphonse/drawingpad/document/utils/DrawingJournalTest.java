@@ -0,0 +1,236 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawingJournalTest {
+
+    private static final JsonMapper JSON_MAPPER = JsonMapper.builder()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .build();
+
+    @TempDir
+    Path directory;
+
+    private Path path;
+
+    private Path journalPath;
+
+    private Drawing model;
+
+    private DrawingJournal journal;
+
+    private final List<Exception> failures = new ArrayList<>();
+
+    @BeforeEach
+    void writeDrawing() throws IOException {
+        path = directory.resolve("drawing.json");
+        journalPath = directory.resolve(".drawing.json.journal");
+        Drawing savedModel = GraphHandler.makeEmptyModel();
+        Object object = ModelHandler.addObject(new Position(0, 0), savedModel);
+        ModelHandler.addCompletion(object, new Position(0, 50), savedModel);
+        DrawingWriter.writeDrawing(GraphHandler.mapModelToJson(savedModel), path, false);
+        model = DrawingReader.readDrawing(path);
+        journal = new DrawingJournal(model, failures::add);
+        assertFalse(journal.recover(path));
+    }
+
+    // the journal receives the changes as the document does, once per notification
+    private void appendChanges() {
+        journal.appendChanges(GraphHandler.collectChangedElements(model));
+    }
+
+    // the journal is used on the event dispatch thread, where it writes its records at the end of the events
+    private static void onEventThread(Executable action) throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(() -> assertDoesNotThrow(action));
+    }
+
+    private static void waitForEndOfEvents() throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(GraphHandler::doNothing);
+    }
+
+    private static String describeModel(Drawing model) throws JsonProcessingException {
+        DrawingJson json = GraphHandler.mapModelToJson(model);
+        json.getElements().sort(Comparator.comparing(GraphElement::getId));
+        return JSON_MAPPER.writeValueAsString(json);
+    }
+
+    private Drawing recoverDrawing() throws IOException {
+        Drawing recoveredModel = DrawingReader.readDrawing(path);
+        assertTrue(new DrawingJournal(recoveredModel, failures::add).recover(path));
+        return recoveredModel;
+    }
+
+    private void makeChanges() {
+        Object object = (Object) model.getElementsById().get(1);
+        model.getPositions().put(object, new Position(10, 20));
+        appendChanges();
+        object.setName("renamed");
+        model.getChangeTracker().markChanged(object);
+        model.getNamePositions().put(object, new Vector(3, 4));
+        appendChanges();
+        Object other = ModelHandler.addObject(new Position(100, 0), model);
+        Completion completion = ModelHandler.addCompletion(other, new Position(100, 50), model);
+        appendChanges();
+        ModelHandler.addLink(object, null, other, null, new Position(50, 10), Graduation.ONE, model);
+        appendChanges();
+        model.setNote("journaled note");
+        model.getChangeTracker().markChanged();
+        appendChanges();
+        ModelHandler.deleteElement(completion, model);
+        ModelHandler.deleteElement(model.getElementsById().get(2), model);
+        appendChanges();
+    }
+
+    @Test
+    void recoveredDrawingHasTheJournaledChanges() throws Exception {
+        onEventThread(this::makeChanges);
+        waitForEndOfEvents();
+
+        Drawing recoveredModel = recoverDrawing();
+
+        assertEquals(describeModel(model), describeModel(recoveredModel));
+        assertEquals(List.of(), failures);
+    }
+
+    @Test
+    void recordsAreWrittenAtTheEndOfTheEvents() throws Exception {
+        long emptyJournalSize = Files.size(journalPath);
+        long[] journalSizeDuringTheEvent = new long[1];
+
+        onEventThread(() -> {
+            makeChanges();
+            journalSizeDuringTheEvent[0] = Files.size(journalPath);
+        });
+        waitForEndOfEvents();
+
+        assertEquals(emptyJournalSize, journalSizeDuringTheEvent[0]);
+        assertTrue(Files.size(journalPath) > emptyJournalSize);
+    }
+
+    @Test
+    void compactionKeepsTheChangesMadeAfterTheSave() throws Exception {
+        onEventThread(() -> {
+            makeChanges();
+            long position = journal.findPosition();
+            DrawingJson savedState = GraphHandler.mapModelToJson(model);
+            ModelHandler.addObject(new Position(-50, -50), model);
+            appendChanges();
+            DrawingWriter.writeDrawing(savedState, path, false);
+            // the journal tells the versions of the file apart by their modification time
+            Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 1000));
+
+            journal.compact(path, position);
+            ModelHandler.addObject(new Position(-60, -60), model);
+            appendChanges();
+        });
+        waitForEndOfEvents();
+
+        Drawing recoveredModel = recoverDrawing();
+
+        assertEquals(describeModel(model), describeModel(recoveredModel));
+    }
+
+    @Test
+    void cutRecordIsIgnoredAndTruncated() throws Exception {
+        String[] stateOfTheWholeRecord = new String[1];
+        long[] sizeOfTheWholeRecord = new long[1];
+        onEventThread(() -> {
+            model.getPositions().put(model.getElementsById().get(1), new Position(10, 20));
+            appendChanges();
+            journal.flush();
+            stateOfTheWholeRecord[0] = describeModel(model);
+            sizeOfTheWholeRecord[0] = Files.size(journalPath);
+            model.getPositions().put(model.getElementsById().get(1), new Position(30, 40));
+            appendChanges();
+        });
+        waitForEndOfEvents();
+        Files.write(journalPath, Arrays.copyOf(Files.readAllBytes(journalPath), (int) sizeOfTheWholeRecord[0] + 5));
+
+        Drawing recoveredModel = recoverDrawing();
+
+        assertEquals(stateOfTheWholeRecord[0], describeModel(recoveredModel));
+        assertEquals(sizeOfTheWholeRecord[0], Files.size(journalPath));
+    }
+
+    @Test
+    void journalOfAnotherVersionOfTheFileIsIgnored() throws Exception {
+        onEventThread(this::makeChanges);
+        waitForEndOfEvents();
+        DrawingWriter.writeDrawing(GraphHandler.mapModelToJson(GraphHandler.makeEmptyModel()), path, false);
+
+        Drawing readModel = DrawingReader.readDrawing(path);
+
+        assertFalse(new DrawingJournal(readModel, failures::add).recover(path));
+        assertEquals(List.of(), readModel.getElements());
+    }
+
+    @Test
+    void deletedJournalRecoversNothing() throws Exception {
+        onEventThread(this::makeChanges);
+
+        onEventThread(journal::delete);
+
+        assertFalse(Files.exists(journalPath));
+        assertFalse(new DrawingJournal(DrawingReader.readDrawing(path), failures::add).recover(path));
+    }
+
+    @Test
+    void failureIsReportedOnce() throws Exception {
+        // the new journal can't replace the directory in its way
+        Files.createDirectory(directory.resolve(".drawing.json.journal.new"));
+
+        onEventThread(() -> {
+            journal.compact(path, journal.findPosition());
+            journal.compact(path, journal.findPosition());
+            ModelHandler.addObject(new Position(0, 0), model);
+            appendChanges();
+        });
+        waitForEndOfEvents();
+
+        assertEquals(1, failures.size());
+    }
+
+    // larger than the buffer of the journal
+    @Test
+    void recordOfManyChangesIsWrittenWhole() throws Exception {
+        onEventThread(() -> {
+            for (int i = 0 ; i < 5000 ; i++) {
+                ModelHandler.addObject(new Position(i, -i), model).setName("object " + i);
+            }
+            appendChanges();
+        });
+        waitForEndOfEvents();
+
+        Drawing recoveredModel = recoverDrawing();
+
+        assertEquals(describeModel(model), describeModel(recoveredModel));
+    }
+}
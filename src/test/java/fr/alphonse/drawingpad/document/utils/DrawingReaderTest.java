@@ -0,0 +1,122 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.DrawingJson;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrawingReaderTest {
+
+    private static final JsonMapper JSON_MAPPER = JsonMapper.builder()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+            .build();
+
+    @TempDir
+    Path directory;
+
+    private static String describeModel(Drawing model) throws JsonProcessingException {
+        DrawingJson json = GraphHandler.mapModelToJson(model);
+        json.getElements().sort(Comparator.comparing(GraphElement::getId));
+        return JSON_MAPPER.writeValueAsString(json);
+    }
+
+    private Path writeText(String text) throws IOException {
+        Path path = directory.resolve("drawing.json");
+        Files.writeString(path, text);
+        return path;
+    }
+
+    @Test
+    void readDrawingIsTheWrittenDrawing() throws IOException {
+        Drawing model = GraphHandler.makeEmptyModel();
+        Object origin = ModelHandler.addObject(new Position(-10, 20), model);
+        origin.setName("origine");
+        model.getNamePositions().put(origin, new Vector(5, -5));
+        Object destination = ModelHandler.addObject(new Position(300, -200), model);
+        Completion completion = ModelHandler.addCompletion(origin, new Position(-10, 60), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, new Position(150, -90), Graduation.ONE, model);
+        ModelHandler.addLink(link, null, completion, null, null, Graduation.ZERO, model);
+        model.setNote("une note");
+        Path path = directory.resolve("drawing.json");
+        DrawingWriter.writeDrawing(GraphHandler.mapModelToJson(model), path, false);
+
+        Drawing readModel = DrawingReader.readDrawing(path);
+
+        assertEquals(describeModel(model), describeModel(readModel));
+        assertEquals(model.getNextId(), readModel.getNextId());
+    }
+
+    @Test
+    void positionsCanComeBeforeTheElements() throws IOException {
+        Path path = writeText("""
+                {"positions": {"1": {"x": 1, "y": 2}}, "namePositions": {"1": {"y": 3}}, "elements": [{"type": ".Object", "id": 1}], "unknown": [1, {"a": 2}]}
+                """);
+
+        Drawing model = DrawingReader.readDrawing(path);
+
+        GraphElement object = model.getElementsById().get(1);
+        assertEquals(new Position(1, 2), model.getPositions().get(object));
+        assertEquals(new Vector(0, 3), model.getNamePositions().get(object));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "[]",
+            "{\"elements\": {}}",
+            "{\"elements\": [null]}",
+            "{\"elements\": [{\"type\": \".Object\"}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": -1}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 16777216}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}, {\"type\": \".Completion\", \"id\": 2, \"baseId\": null}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}, {\"type\": \".Completion\", \"id\": 2}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}, {\"type\": \".Completion\", \"id\": 2, \"baseId\": 7}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}, {\"type\": \".Link\", \"id\": 2, \"originId\": 1, \"destinationId\": null}]}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"positions\": {\"1\": null}}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"positions\": {\"1\": {\"x\": null, \"y\": 2}}}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"positions\": {\"1\": {\"x\": \"1\", \"y\": 2}}}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"namePositions\": {\"1\": {\"x\": 1, \"y\": null}}}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"positions\": {\"one\": {\"x\": 1, \"y\": 2}}}",
+            "{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"positions\": {\"2\": {\"x\": 1, \"y\": 2}}}",
+            "{\"positions\": {\"2\": {\"x\": 1, \"y\": 2}}, \"elements\": [{\"type\": \".Object\", \"id\": 1}]}",
+            "{\"positions\": {\"1\": {\"x\": 1, \"y\": 2}}}",
+            "{\"elements\": [], \"note\": 3}",
+            "{\"elements\": [], \"note\": {}}",
+    })
+    void invalidDrawingIsRejectedWithItsLocation(String text) throws IOException {
+        Path path = writeText(text);
+
+        JsonParseException exception = assertThrows(JsonParseException.class, () -> DrawingReader.readDrawing(path));
+        assertNotNull(exception.getLocation());
+    }
+
+    @Test
+    void nullFieldsAreMissingFields() throws IOException {
+        Path path = writeText("{\"elements\": [{\"type\": \".Object\", \"id\": 1}], \"positions\": null, \"note\": null}");
+
+        Drawing model = DrawingReader.readDrawing(path);
+
+        assertEquals(1, model.getElements().size());
+        assertEquals("", model.getNote());
+    }
+}
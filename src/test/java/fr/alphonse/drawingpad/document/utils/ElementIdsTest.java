@@ -0,0 +1,93 @@
+package fr.alphonse.drawingpad.document.utils;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.view.internal.ModelHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ElementIdsTest {
+
+    private Drawing model;
+
+    @BeforeEach
+    void makeModel() {
+        model = GraphHandler.makeEmptyModel();
+    }
+
+    private static Drawing makeClipboard() {
+        Drawing clipboard = GraphHandler.makeEmptyModel();
+        Object origin = ModelHandler.addObject(new Position(0, 0), clipboard);
+        Object destination = ModelHandler.addObject(new Position(100, 0), clipboard);
+        ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, clipboard);
+        return clipboard;
+    }
+
+    @Test
+    void idsOfRemovedElementsAreNotReused() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        ModelHandler.deleteElement(object, model);
+
+        Object newObject = ModelHandler.addObject(new Position(0, 0), model);
+
+        assertEquals(object.getId() + 1, newObject.getId());
+        assertSame(newObject, model.getElementsById().get(newObject.getId()));
+    }
+
+    @Test
+    void lastIdCanBeUsed() {
+        model.setNextId(Drawing.MAX_ID);
+
+        Object object = ModelHandler.addObject(new Position(1, 2), model);
+
+        assertEquals(Drawing.MAX_ID, object.getId());
+        assertEquals(new Position(1, 2), model.getPositions().get(object));
+        assertFalse(GraphHandler.hasAvailableIds(model, 1));
+    }
+
+    @Test
+    void addFailsWithoutChangingTheModelWhenTheIdsRunOut() {
+        model.setNextId(Drawing.MAX_ID);
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        GraphHandler.collectChangedElements(model);
+
+        assertThrows(IllegalStateException.class, () -> ModelHandler.addObject(new Position(0, 0), model));
+        assertThrows(IllegalStateException.class, () -> ModelHandler.addCompletion(object, new Position(0, 50), model));
+
+        assertEquals(List.of(object), model.getElements());
+        assertEquals(1, model.getPositions().size());
+        assertNull(GraphHandler.collectChangedElements(model));
+    }
+
+    @Test
+    void pasteFailsWholeWhenTheIdsRunOut() {
+        Drawing clipboard = makeClipboard();
+        model.setNextId(Drawing.MAX_ID - 1);
+
+        assertFalse(GraphHandler.hasAvailableIds(model, clipboard.getElements().size()));
+        assertThrows(IllegalStateException.class, () -> GraphHandler.addModelToModel(clipboard, model));
+
+        assertEquals(List.of(), model.getElements());
+        assertTrue(model.getPositions().isEmpty());
+    }
+
+    @Test
+    void pasteIntoANewDrawingNumbersTheElementsAgain() {
+        model.setNextId(Drawing.MAX_ID - 2);
+        List<GraphElement> pastedElements = GraphHandler.addModelToModel(makeClipboard(), model);
+        Drawing copy = GraphHandler.extractModelWithElements(model, pastedElements);
+        Drawing newModel = GraphHandler.makeEmptyModel();
+
+        List<GraphElement> newElements = GraphHandler.addModelToModel(copy, newModel);
+
+        assertEquals(List.of(1, 2, 3), newElements.stream().map(GraphElement::getId).toList());
+        assertEquals(4, newModel.getNextId());
+    }
+}
@@ -0,0 +1,224 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Rectangle;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.reference.LinkDirection;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeometryManagerTest {
+
+    private Drawing model;
+
+    private GeometryManager geometryManager;
+
+    @BeforeEach
+    void makeModel() {
+        model = GraphHandler.makeEmptyModel();
+        geometryManager = new GeometryManager(model);
+    }
+
+    private void addRandomElements(Random random, int count) {
+        List<GraphElement> bases = new ArrayList<>();
+        for (int i = 0 ; i < count ; i++) {
+            Position position = new Position(-2000 + random.nextInt(4000), -2000 + random.nextInt(4000));
+            bases.add(random.nextInt(4) == 0 && !bases.isEmpty() ?
+                    ModelHandler.addCompletion(bases.get(random.nextInt(bases.size())), position, model) :
+                    ModelHandler.addObject(position, model));
+        }
+        for (int i = 0 ; i < count ; i++) {
+            GraphElement origin = bases.get(random.nextInt(bases.size()));
+            GraphElement destination = bases.get(random.nextInt(bases.size()));
+            if (origin != destination) {
+                Position center = random.nextBoolean() ? null : new Position(-2000 + random.nextInt(4000), -2000 + random.nextInt(4000));
+                bases.add(ModelHandler.addLink(origin, findLinkDirection(origin), destination, findLinkDirection(destination), center, Graduation.ONE, model));
+            }
+        }
+    }
+
+    // the ends of links of links have a direction
+    private static LinkDirection findLinkDirection(GraphElement element) {
+        return element instanceof Link ? LinkDirection.DIRECT : null;
+    }
+
+    // the lines drawn for the element, an object being drawn around its position
+    private List<Position> listDrawnPositions(GraphElement element) {
+        return switch (element) {
+            case Object object -> List.of(geometryManager.findElementPosition(object));
+            case Completion completion -> List.of(geometryManager.findElementPosition(completion), geometryManager.findElementPosition(completion.getBase()));
+            case Link link -> {
+                LinkGeometry linkGeometry = geometryManager.findLinkGeometry(link);
+                Position center = model.getPositions().get(link);
+                yield center == null ?
+                        List.of(linkGeometry.originPosition(), linkGeometry.destinationPosition()) :
+                        List.of(linkGeometry.originPosition(), center, linkGeometry.destinationPosition());
+            }
+        };
+    }
+
+    private boolean isDrawnIn(GraphElement element, Rectangle rectangle) {
+        List<Position> positions = listDrawnPositions(element);
+        if (positions.size() == 1) {
+            return rectangle.increaseByMargin(GeometryManager.OBJECT_RADIUS).containsPosition(positions.get(0));
+        }
+        for (int i = 0 ; i < positions.size() - 1 ; i++) {
+            Vector vector = Vector.between(positions.get(i), positions.get(i + 1));
+            int stepCount = Math.max(1, vector.infiniteNormLength());
+            for (int step = 0 ; step <= stepCount ; step++) {
+                Position position = new Position(positions.get(i).x() + vector.x() * step / stepCount, positions.get(i).y() + vector.y() * step / stepCount);
+                if (rectangle.containsPosition(position)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // every element drawn in the rectangle is displayed, and in the display order
+    private void assertDisplayedElementsIn(Rectangle rectangle) {
+        List<GraphElement> displayedElements = geometryManager.listElementsToDisplayIn(rectangle);
+
+        for (GraphElement element: model.getElements()) {
+            if (isDrawnIn(element, rectangle)) {
+                assertTrue(displayedElements.contains(element), element + " in " + rectangle);
+            }
+        }
+        assertEquals(displayedElements.stream().sorted(GeometryManager.DISPLAY_ORDER).toList(), displayedElements);
+        assertEquals(displayedElements.size(), displayedElements.stream().distinct().count());
+    }
+
+    @Test
+    void objectIsFoundWithinItsRadius() {
+        Object object = ModelHandler.addObject(new Position(100, 100), model);
+
+        assertSame(object, geometryManager.findElementAtPosition(new Position(100, 100)));
+        assertSame(object, geometryManager.findElementAtPosition(new Position(109, 91)));
+        assertNull(geometryManager.findElementAtPosition(new Position(110, 100)));
+        assertNull(geometryManager.findElementAtPosition(new Position(-100, -100)));
+    }
+
+    @Test
+    void elementsAreFoundInTheReverseOrderOfTheirDisplay() {
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        Object destination = ModelHandler.addObject(new Position(300, 0), model);
+        Completion completion = ModelHandler.addCompletion(destination, new Position(150, 0), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+
+        assertSame(completion, geometryManager.findElementAtPosition(new Position(150, 0)));
+        assertSame(link, geometryManager.findElementAtPosition(new Position(80, 3)));
+        assertSame(link, geometryManager.findElementOfTypeAtPosition(new Position(150, 0), Link.class));
+        assertSame(origin, geometryManager.findElementAtPosition(new Position(8, 0)));
+    }
+
+    // the objects are far enough apart for a position to be within the radius of one of them at most
+    @Test
+    void foundObjectIsTheOneWithinTheRadius() {
+        Random random = new Random(3);
+        List<Object> objects = new ArrayList<>();
+        for (int i = 0 ; i < 40 ; i++) {
+            for (int j = 0 ; j < 30 ; j++) {
+                Position position = new Position(-700 + 37 * i + random.nextInt(5), -500 + 29 * j + random.nextInt(5));
+                objects.add(ModelHandler.addObject(position, model));
+            }
+        }
+
+        for (int i = 0 ; i < 5000 ; i++) {
+            Position position = new Position(-750 + random.nextInt(1600), -550 + random.nextInt(1000));
+            Object expectedObject = objects.stream()
+                    .filter(object -> Vector.between(model.getPositions().get(object), position).infiniteNormLength() < GeometryManager.OBJECT_RADIUS)
+                    .findFirst()
+                    .orElse(null);
+            assertSame(expectedObject, geometryManager.findElementAtPosition(position), position.toString());
+        }
+    }
+
+    @Test
+    void movedElementsAreFoundAtTheirNewPositions() {
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        Object destination = ModelHandler.addObject(new Position(300, 0), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        assertSame(link, geometryManager.findElementAtPosition(new Position(150, 0)));
+
+        model.getPositions().put(destination, new Position(0, 300));
+
+        assertNull(geometryManager.findElementAtPosition(new Position(300, 0)));
+        assertNull(geometryManager.findElementAtPosition(new Position(150, 0)));
+        assertSame(destination, geometryManager.findElementAtPosition(new Position(0, 300)));
+        assertSame(link, geometryManager.findElementAtPosition(new Position(0, 150)));
+    }
+
+    @Test
+    void deletedElementsAreNotFound() {
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        Object destination = ModelHandler.addObject(new Position(300, 0), model);
+        ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        assertNotNull(geometryManager.findElementAtPosition(new Position(150, 0)));
+
+        ModelHandler.deleteElement(destination, model);
+
+        assertNull(geometryManager.findElementAtPosition(new Position(300, 0)));
+        assertNull(geometryManager.findElementAtPosition(new Position(150, 0)));
+        assertSame(origin, geometryManager.findElementAtPosition(new Position(0, 0)));
+    }
+
+    @Test
+    void displayedElementsContainTheElementsDrawnInTheRectangle() {
+        Random random = new Random(8);
+        addRandomElements(random, 500);
+
+        for (int i = 0 ; i < 200 ; i++) {
+            Position corner = new Position(-2500 + random.nextInt(5000), -2500 + random.nextInt(5000));
+            assertDisplayedElementsIn(new Rectangle(corner.x(), corner.y(), random.nextInt(1000), random.nextInt(800)));
+        }
+    }
+
+    @Test
+    void farElementsAreNotDisplayed() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        Object farObject = ModelHandler.addObject(new Position(5000, 5000), model);
+        Object otherFarObject = ModelHandler.addObject(new Position(5000, -5000), model);
+        Link link = ModelHandler.addLink(farObject, null, otherFarObject, null, null, Graduation.ONE, model);
+
+        assertEquals(List.of(object), geometryManager.listElementsToDisplayIn(new Rectangle(-400, -300, 800, 600)));
+        assertEquals(List.of(link, farObject), geometryManager.listElementsToDisplayIn(new Rectangle(4600, 4700, 800, 600)));
+        assertEquals(List.of(link), geometryManager.listElementsToDisplayIn(new Rectangle(4600, -300, 800, 600)));
+    }
+
+    @Test
+    void displayedElementsFollowTheModelChanges() {
+        Random random = new Random(9);
+        addRandomElements(random, 200);
+        Rectangle rectangle = new Rectangle(-400, -300, 800, 600);
+        assertDisplayedElementsIn(rectangle);
+
+        for (int i = 0 ; i < 100 ; i++) {
+            List<GraphElement> elements = model.getElements();
+            GraphElement element = elements.get(random.nextInt(elements.size()));
+            switch (random.nextInt(3)) {
+                case 0 -> ModelHandler.deleteElement(element, model);
+                case 1 -> ModelHandler.addObject(new Position(-500 + random.nextInt(1000), -400 + random.nextInt(800)), model);
+                default -> {
+                    if (!(element instanceof Link)) {
+                        model.getPositions().put(element, new Position(-500 + random.nextInt(1000), -400 + random.nextInt(800)));
+                    }
+                }
+            }
+            assertDisplayedElementsIn(rectangle);
+            assertTrue(geometryManager.listElementsToDisplayIn(rectangle).stream().allMatch(displayedElement -> GeometryManager.isInModel(displayedElement, model)));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MagneticGuidesTest {
+
+    // the radius of MagneticGuides
+    private static final int MAGNETISM_RADIUS = 3;
+
+    // the smallest distance from a dragged coordinate to a guide, null if none is within the radius
+    private static Integer findSmallestDistance(List<Position> positions, List<Position> draggedPositions, ToIntFunction<Position> coordinate) {
+        Integer smallestDistance = null;
+        for (Position draggedPosition: draggedPositions) {
+            for (Position position: positions) {
+                int distance = Math.abs(coordinate.applyAsInt(position) - coordinate.applyAsInt(draggedPosition));
+                if (distance <= MAGNETISM_RADIUS && (smallestDistance == null || distance < smallestDistance)) {
+                    smallestDistance = distance;
+                }
+            }
+        }
+        return smallestDistance;
+    }
+
+    private static boolean isReachedByShift(List<Position> positions, List<Position> draggedPositions, ToIntFunction<Position> coordinate, int shift) {
+        return draggedPositions.stream().anyMatch(draggedPosition -> positions.stream()
+                .anyMatch(position -> coordinate.applyAsInt(position) == coordinate.applyAsInt(draggedPosition) + shift));
+    }
+
+    @Test
+    void shiftBringsTheNearestCoordinatesOnTheGuides() {
+        MagneticGuides guides = new MagneticGuides(List.of(new Position(100, 50), new Position(-20, 200)));
+
+        assertEquals(new Vector(2, -3), guides.computeShift(List.of(new Position(98, 53))));
+        assertEquals(new Vector(-1, 1), guides.computeShift(List.of(new Position(0, 49), new Position(-19, 300))));
+        assertEquals(new Vector(-1, 0), guides.computeShift(List.of(new Position(101, 0))));
+        assertNull(guides.computeShift(List.of(new Position(96, 54))));
+        assertNull(new MagneticGuides(List.of()).computeShift(List.of(new Position(0, 0))));
+    }
+
+    @Test
+    void guidesAreTheCoordinatesReachedAfterTheShift() {
+        MagneticGuides guides = new MagneticGuides(List.of(new Position(100, 50), new Position(-20, 200), new Position(100, 0)));
+        List<Position> draggedPositions = List.of(new Position(98, 48), new Position(98, 198), new Position(-22, 0));
+        List<Integer> guidesX = new ArrayList<>();
+        List<Integer> guidesY = new ArrayList<>();
+
+        guides.fillGuides(draggedPositions, new Vector(2, 2), guidesX, guidesY);
+
+        assertEquals(List.of(-20, 100), guidesX);
+        assertEquals(List.of(50, 200), guidesY);
+    }
+
+    @Test
+    void shiftIsTheSmallestOneToAGuide() {
+        Random random = new Random(5);
+        for (int i = 0 ; i < 500 ; i++) {
+            List<Position> positions = new ArrayList<>();
+            for (int j = random.nextInt(30) ; j > 0 ; j--) {
+                positions.add(new Position(random.nextInt(200), random.nextInt(200)));
+            }
+            List<Position> draggedPositions = new ArrayList<>();
+            for (int j = 1 + random.nextInt(5) ; j > 0 ; j--) {
+                draggedPositions.add(new Position(random.nextInt(200), random.nextInt(200)));
+            }
+            MagneticGuides guides = new MagneticGuides(positions);
+
+            Vector shift = guides.computeShift(draggedPositions);
+
+            Integer distanceX = findSmallestDistance(positions, draggedPositions, Position::x);
+            Integer distanceY = findSmallestDistance(positions, draggedPositions, Position::y);
+            if (distanceX == null && distanceY == null) {
+                assertNull(shift);
+                continue;
+            }
+            assertNotNull(shift);
+            assertEquals(distanceX == null ? 0 : distanceX, Math.abs(shift.x()));
+            assertEquals(distanceY == null ? 0 : distanceY, Math.abs(shift.y()));
+            assertTrue(distanceX == null || isReachedByShift(positions, draggedPositions, Position::x, shift.x()));
+            assertTrue(distanceY == null || isReachedByShift(positions, draggedPositions, Position::y, shift.y()));
+        }
+    }
+}
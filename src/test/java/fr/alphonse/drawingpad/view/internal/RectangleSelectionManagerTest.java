@@ -0,0 +1,124 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.Drawing;
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Rectangle;
+import fr.alphonse.drawingpad.data.model.Completion;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Link;
+import fr.alphonse.drawingpad.data.model.Object;
+import fr.alphonse.drawingpad.data.model.reference.LinkDirection;
+import fr.alphonse.drawingpad.data.model.value.Graduation;
+import fr.alphonse.drawingpad.document.utils.GraphHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RectangleSelectionManagerTest {
+
+    private Drawing model;
+
+    private RectangleSelectionManager selectionManager;
+
+    @BeforeEach
+    void makeModel() {
+        model = GraphHandler.makeEmptyModel();
+        selectionManager = new RectangleSelectionManager(model, new GeometryManager(model));
+    }
+
+    // the links are selected with both their ends, links included
+    private Set<GraphElement> findExpectedSelection(Rectangle rectangle) {
+        Set<GraphElement> selection = new HashSet<>();
+        for (GraphElement element: model.getElements()) {
+            if (!(element instanceof Link) && rectangle.containsPosition(model.getPositions().get(element))) {
+                selection.add(element);
+            }
+        }
+        boolean didChange = true;
+        while (didChange) {
+            didChange = false;
+            for (GraphElement element: model.getElements()) {
+                if (element instanceof Link link && selection.contains(link.getOrigin()) && selection.contains(link.getDestination())) {
+                    didChange |= selection.add(link);
+                }
+            }
+        }
+        return selection;
+    }
+
+    // the ends of links of links have a direction
+    private static LinkDirection findLinkDirection(GraphElement element) {
+        return element instanceof Link ? LinkDirection.DIRECT : null;
+    }
+
+    @Test
+    void linkIsSelectedWithBothItsEnds() {
+        Object origin = ModelHandler.addObject(new Position(0, 0), model);
+        Object destination = ModelHandler.addObject(new Position(100, 0), model);
+        Completion completion = ModelHandler.addCompletion(destination, new Position(100, 100), model);
+        Link link = ModelHandler.addLink(origin, null, destination, null, null, Graduation.ONE, model);
+        Link linkOfLink = ModelHandler.addLink(link, LinkDirection.DIRECT, completion, null, null, Graduation.ONE, model);
+        selectionManager.startSelection();
+
+        assertEquals(Set.of(origin), selectionManager.changeRectangle(new Rectangle(-10, -10, 20, 20)));
+        assertEquals(Set.of(origin, destination, link), selectionManager.changeRectangle(new Rectangle(-10, -10, 120, 20)));
+        assertEquals(Set.of(origin, destination, link, completion, linkOfLink), selectionManager.changeRectangle(new Rectangle(-10, -10, 120, 120)));
+        assertEquals(Set.of(destination, completion), selectionManager.changeRectangle(new Rectangle(50, -10, 60, 120)));
+        assertEquals(Set.of(origin, link, linkOfLink), new HashSet<>(selectionManager.listChangedElements()));
+    }
+
+    @Test
+    void selectionFollowsTheRectangleAsItIsDragged() {
+        Random random = new Random(5);
+        List<GraphElement> bases = new ArrayList<>();
+        for (int i = 0 ; i < 300 ; i++) {
+            Position position = new Position(-1000 + random.nextInt(2000), -1000 + random.nextInt(2000));
+            bases.add(random.nextInt(4) == 0 && !bases.isEmpty() ?
+                    ModelHandler.addCompletion(bases.get(random.nextInt(bases.size())), position, model) :
+                    ModelHandler.addObject(position, model));
+        }
+        for (int i = 0 ; i < 300 ; i++) {
+            GraphElement origin = bases.get(random.nextInt(bases.size()));
+            GraphElement destination = bases.get(random.nextInt(bases.size()));
+            if (origin != destination) {
+                bases.add(ModelHandler.addLink(origin, findLinkDirection(origin), destination, findLinkDirection(destination), null, Graduation.ONE, model));
+            }
+        }
+        Position corner = new Position(random.nextInt(200), random.nextInt(200));
+        selectionManager.startSelection();
+        Set<GraphElement> previousSelection = Set.of();
+
+        for (int i = 0 ; i < 200 ; i++) {
+            Rectangle rectangle = Rectangle.between(corner, new Position(-1000 + random.nextInt(2000), -1000 + random.nextInt(2000)));
+            Set<GraphElement> expectedSelection = findExpectedSelection(rectangle);
+
+            Set<GraphElement> selection = new HashSet<>(selectionManager.changeRectangle(rectangle));
+
+            assertEquals(expectedSelection, selection, rectangle.toString());
+            Set<GraphElement> expectedChanges = new HashSet<>(previousSelection);
+            expectedChanges.addAll(selection);
+            Set<GraphElement> unchangedElements = new HashSet<>(previousSelection);
+            unchangedElements.retainAll(selection);
+            expectedChanges.removeAll(unchangedElements);
+            // a link can enter and leave the selection within the same change
+            assertTrue(selectionManager.listChangedElements().containsAll(expectedChanges));
+            previousSelection = selection;
+        }
+    }
+
+    @Test
+    void newSelectionStartsEmpty() {
+        Object object = ModelHandler.addObject(new Position(0, 0), model);
+        selectionManager.startSelection();
+        selectionManager.changeRectangle(new Rectangle(-10, -10, 20, 20));
+
+        selectionManager.startSelection();
+
+        assertEquals(Set.of(), selectionManager.changeRectangle(new Rectangle(50, 50, 20, 20)));
+        assertEquals(Set.of(object), selectionManager.changeRectangle(new Rectangle(-10, -10, 80, 80)));
+        assertEquals(List.of(object), selectionManager.listChangedElements());
+    }
+}
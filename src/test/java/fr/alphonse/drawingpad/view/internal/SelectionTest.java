@@ -0,0 +1,95 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Object;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelectionTest {
+
+    private final Selection selection = new Selection();
+
+    private static Object makeObject(int id) {
+        return Object.builder()
+                .id(id)
+                .build();
+    }
+
+    @Test
+    void elementsAreKeptInSelectionOrderWithoutDuplicates() {
+        Object object = makeObject(1);
+        Object otherObject = makeObject(2);
+
+        assertTrue(selection.add(otherObject));
+        assertTrue(selection.add(object));
+        assertFalse(selection.add(otherObject));
+        assertFalse(selection.addAll(List.of(object, otherObject)));
+
+        assertEquals(List.of(otherObject, object), selection);
+        assertTrue(selection.contains(object));
+        assertFalse(selection.contains(makeObject(3)));
+    }
+
+    @Test
+    void versionOnlyChangesWithTheSelection() {
+        Object object = makeObject(1);
+        selection.add(object);
+        long version = selection.getVersion();
+
+        selection.add(object);
+        selection.remove(makeObject(2));
+        selection.removeIf(element -> element.getId() == 2);
+        assertEquals(version, selection.getVersion());
+
+        selection.clear();
+        assertTrue(selection.getVersion() > version);
+        version = selection.getVersion();
+        selection.clear();
+        assertEquals(version, selection.getVersion());
+    }
+
+    @Test
+    void randomOperationsMatchAList() {
+        Random random = new Random(13);
+        List<Object> objects = new ArrayList<>();
+        for (int id = 1 ; id <= 50 ; id++) {
+            objects.add(makeObject(id));
+        }
+        List<GraphElement> expectedElements = new ArrayList<>();
+        for (int i = 0 ; i < 5000 ; i++) {
+            Object object = objects.get(random.nextInt(objects.size()));
+            switch (random.nextInt(6)) {
+                case 0, 1 -> assertEquals(!expectedElements.contains(object) && expectedElements.add(object), selection.add(object));
+                case 2 -> assertEquals(expectedElements.remove(object), selection.remove(object));
+                case 3 -> {
+                    if (!expectedElements.isEmpty()) {
+                        int index = random.nextInt(expectedElements.size());
+                        assertEquals(expectedElements.remove(index), selection.remove(index));
+                    }
+                }
+                case 4 -> {
+                    int id = object.getId();
+                    assertEquals(expectedElements.removeIf(element -> element.getId() < id), selection.removeIf(element -> element.getId() < id));
+                }
+                default -> {
+                    Iterator<GraphElement> iterator = selection.iterator();
+                    if (iterator.hasNext()) {
+                        iterator.next();
+                        iterator.remove();
+                        expectedElements.remove(0);
+                    }
+                }
+            }
+            assertEquals(expectedElements, selection);
+            assertTrue(expectedElements.stream().allMatch(selection::contains));
+            // the elements are told apart by identity
+            assertFalse(selection.contains(makeObject(object.getId())));
+        }
+    }
+}
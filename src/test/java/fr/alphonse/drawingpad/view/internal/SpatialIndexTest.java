@@ -0,0 +1,111 @@
+package fr.alphonse.drawingpad.view.internal;
+
+import fr.alphonse.drawingpad.data.geometry.Position;
+import fr.alphonse.drawingpad.data.geometry.Rectangle;
+import fr.alphonse.drawingpad.data.model.GraphElement;
+import fr.alphonse.drawingpad.data.model.Object;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialIndexTest {
+
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+
+    private static Object makeObject(int id) {
+        return Object.builder()
+                .id(id)
+                .build();
+    }
+
+    @Test
+    void pointIsNearThePositionsWithinItsRadius() {
+        Object object = makeObject(1);
+
+        spatialIndex.addPoint(object, new Position(-70, 130), 10);
+
+        assertTrue(spatialIndex.listElementsNear(new Position(-70, 130)).contains(object));
+        assertTrue(spatialIndex.listElementsNear(new Position(-60, 120)).contains(object));
+        assertTrue(spatialIndex.listElementsNear(new Position(-80, 140)).contains(object));
+        assertFalse(spatialIndex.listElementsNear(new Position(70, 130)).contains(object));
+        assertFalse(spatialIndex.listElementsNear(new Position(-70, -130)).contains(object));
+    }
+
+    @Test
+    void segmentIsNearAllItsPositions() {
+        Object object = makeObject(1);
+
+        spatialIndex.addSegment(object, new Position(-500, -300), new Position(700, 400), 10);
+
+        for (int i = 0 ; i <= 100 ; i++) {
+            Position position = new Position(-500 + 1200 * i / 100, -300 + 700 * i / 100);
+            assertEquals(1, spatialIndex.listElementsNear(position).stream().filter(object::equals).count());
+        }
+        assertFalse(spatialIndex.listElementsNear(new Position(700, -300)).contains(object));
+    }
+
+    @Test
+    void removedElementIsNoLongerFound() {
+        Object object = makeObject(1);
+        Object otherObject = makeObject(2);
+        spatialIndex.addSegment(object, new Position(0, 0), new Position(300, 0), 10);
+        spatialIndex.addPoint(otherObject, new Position(100, 0), 10);
+
+        spatialIndex.remove(object);
+        spatialIndex.remove(object);
+
+        assertEquals(Set.of(otherObject), spatialIndex.listElementsInRectangle(new Rectangle(-1000, -1000, 2000, 2000)));
+        assertEquals(Set.of(), spatialIndex.listElementsInRectangle(new Rectangle(200, -10, 100, 20)));
+    }
+
+    @Test
+    void rectangleListsTheElementsOfTheCellsItCovers() {
+        Object object = makeObject(1);
+        Object farObject = makeObject(2);
+        Object wideObject = makeObject(3);
+        spatialIndex.addPoint(object, new Position(10, 10), 5);
+        spatialIndex.addPoint(farObject, new Position(5000, -5000), 5);
+        spatialIndex.addRectangle(wideObject, new Rectangle(-1000, 200, 2000, 10));
+
+        assertEquals(Set.of(object), spatialIndex.listElementsInRectangle(new Rectangle(0, 0, 20, 20)));
+        assertEquals(Set.of(wideObject), spatialIndex.listElementsInRectangle(new Rectangle(900, 190, 20, 20)));
+        assertEquals(Set.of(object, wideObject), spatialIndex.listElementsInRectangle(new Rectangle(-20, -20, 40, 240)));
+        assertEquals(Set.of(farObject), spatialIndex.listElementsInRectangle(new Rectangle(4990, -5010, 20, 20)));
+    }
+
+    // the elements entering or leaving the rectangle are among the ones listed around the change
+    @Test
+    void elementsAroundRectangleChangeContainTheElementsThatCrossedItsEdges() {
+        Random random = new Random(4);
+        List<Position> positions = new ArrayList<>();
+        for (int id = 1 ; id <= 2000 ; id++) {
+            Position position = new Position(-1000 + random.nextInt(2000), -1000 + random.nextInt(2000));
+            positions.add(position);
+            spatialIndex.addPoint(makeObject(id), position, 0);
+        }
+        Position corner = new Position(-50, 30);
+        Rectangle previousRectangle = null;
+
+        for (int i = 0 ; i < 300 ; i++) {
+            Rectangle rectangle = Rectangle.between(corner, new Position(-1000 + random.nextInt(2000), -1000 + random.nextInt(2000)));
+            Set<GraphElement> elements = spatialIndex.listElementsAroundRectangleChange(previousRectangle, rectangle);
+
+            Set<Integer> listedIds = new HashSet<>();
+            elements.forEach(element -> listedIds.add(element.getId()));
+            for (int id = 1 ; id <= positions.size() ; id++) {
+                Position position = positions.get(id - 1);
+                boolean wasInRectangle = previousRectangle != null && previousRectangle.containsPosition(position);
+                if (wasInRectangle != rectangle.containsPosition(position)) {
+                    assertTrue(listedIds.contains(id), position + " between " + previousRectangle + " and " + rectangle);
+                }
+            }
+            previousRectangle = rectangle;
+        }
+    }
+}